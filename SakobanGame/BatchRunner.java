@@ -0,0 +1,336 @@
+/**
+ * This class BatchRunner plays a range of levels without a graphical
+ * interface, each level by a new agent, in parallel on a pool of threads, and
+ * writes the result of each level as CSV or JSON. Usage:
+ * java BatchRunner [--levels first-last] [--pack file.xsb] [--agent agent]
+ *      [--max-moves n] [--threads n] [--format csv|json] [--out file]
+ * where agent is solver, random, random:seed, script:file, with a line
+ * "level moves" per level and moves written with the letters U, D, L and R,
+ * or the name of a class implementing SokobanAgent with a public constructor
+ * without parameters.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+public class BatchRunner {
+
+    private static final int PACK_CAPACITY = 1024;
+    private static final long SOLVER_TIME_LIMIT = 10000;
+
+    private BatchRunner(){
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException{
+        Map<String, String> options = new HashMap<>();
+        for(int i = 0; i + 1 < args.length; i += 2){
+            options.put(args[i], args[i + 1]);
+        }
+        LevelRepository levels = options.containsKey("--pack")
+            ? new XsbLevelPack(Paths.get(options.get("--pack"))).levels(PACK_CAPACITY)
+            : LevelRepository.generatorLevels();
+        int first = 1;
+        int last = levels.numberOfLevels();
+        String range = options.get("--levels");
+        if(range != null){
+            int dash = range.indexOf('-');
+            first = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+            last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1));
+        }
+        IntFunction<SokobanAgent> agents = agents(options.getOrDefault("--agent", "solver"));
+        int maxMoves = Integer.parseInt(options.getOrDefault("--max-moves", "100000"));
+        int threads = options.containsKey("--threads") ? Integer.parseInt(options.get("--threads"))
+            : Runtime.getRuntime().availableProcessors();
+        boolean json = "json".equals(options.get("--format"));
+        String out = options.get("--out");
+        try(Writer writer = out == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+            : Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8)){
+            run(levels, first, last, agents, maxMoves, threads, json, writer);
+        }
+    }
+
+    /**
+     * Plays the given levels and writes their results in order of level
+     *
+     * @param levels the levels
+     * @param first the first level played
+     * @param last the last level played
+     * @param agents creates the agent of each level
+     * @param maxMoves the maximum number of moves asked to an agent in a level
+     * @param threads the number of threads playing levels
+     * @param json if the results are written as JSON instead of CSV
+     * @param out where the results are written
+     * @throws IOException if out can not be written
+     * @throws InterruptedException if interrupted while waiting for a level
+     * @requires {@code 1 <= first && first <= last && last <= levels.numberOfLevels() &&
+     *           agents != null && maxMoves >= 0 && threads >= 1 && out != null}
+     */
+    public static void run(LevelRepository levels, int first, int last, IntFunction<SokobanAgent> agents,
+        int maxMoves, int threads, boolean json, Appendable out) throws IOException, InterruptedException{
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try{
+            List<Future<Result>> results = new ArrayList<>();
+            for(int level = first; level <= last; level++){
+                int played = level;
+                results.add(pool.submit(() -> play(levels, played, agents.apply(played), maxMoves)));
+            }
+            out.append(json ? "[\n" : "level,moves,completed,lost,boxes_on_goals,wall_ms\n");
+            for(int k = 0; k < results.size(); k++){
+                Result result = results.get(k).get();
+                if(json){
+                    out.append(k == 0 ? "  " : ",\n  ").append(result.toJson());
+                }
+                else{
+                    out.append(result.toCsv()).append('\n');
+                }
+            }
+            if(json){
+                out.append("\n]\n");
+            }
+        }
+        catch(ExecutionException e){
+            throw new IllegalStateException("a level could not be played", e.getCause());
+        }
+        finally{
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one level with the given agent
+     *
+     * @param levels the levels
+     * @param level the level played
+     * @param agent the agent
+     * @param maxMoves the maximum number of moves asked to the agent
+     * @return the result of the level
+     * @requires {@code 1 <= level && level <= levels.numberOfLevels() && agent != null}
+     */
+    public static Result play(LevelRepository levels, int level, SokobanAgent agent, int maxMoves){
+        long start = System.nanoTime();
+        SokobanGame game = new SokobanGame(levels, level);
+        agent.start(game);
+        for(int k = 0; k < maxMoves && !game.levelCompleted(); k++){
+            Direction dir = agent.nextMove(game);
+            if(dir == null){
+                break;
+            }
+            game.move(dir);
+        }
+        return new Result(level, game.getNrMoves(), game.levelCompleted(), game.isLost(), game.boxesOnGoals(),
+            System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the factory of the agents with the given name
+     *
+     * @param name the name of the agent, as described in the usage
+     * @return creates the agent of each level
+     * @throws IOException if the script can not be read
+     */
+    private static IntFunction<SokobanAgent> agents(String name) throws IOException{
+        if(name.equals("solver")){
+            return level -> new SolverAgent();
+        }
+        if(name.equals("random") || name.startsWith("random:")){
+            long seed = name.equals("random") ? 0 : Long.parseLong(name.substring(7));
+            return level -> new RandomAgent(seed ^ Zobrist.box(level));
+        }
+        if(name.startsWith("script:")){
+            Map<Integer, String> scripts = new HashMap<>();
+            try(BufferedReader reader = Files.newBufferedReader(Paths.get(name.substring(7)))){
+                String line;
+                while((line = reader.readLine()) != null){
+                    String[] parts = line.trim().split("\\s+");
+                    if(parts.length == 2){
+                        scripts.put(Integer.valueOf(parts[0]), parts[1]);
+                    }
+                }
+            }
+            return level -> new ScriptAgent(scripts.getOrDefault(level, ""));
+        }
+        try{
+            Class<? extends SokobanAgent> type = Class.forName(name).asSubclass(SokobanAgent.class);
+            type.getConstructor();
+            return level -> {
+                try{
+                    return type.getConstructor().newInstance();
+                }
+                catch(ReflectiveOperationException e){
+                    throw new IllegalStateException("can not create agent " + name, e);
+                }
+            };
+        }
+        catch(ClassNotFoundException | NoSuchMethodException | ClassCastException e){
+            throw new IllegalArgumentException("unknown agent " + name, e);
+        }
+    }
+
+    /**
+     * An agent that plays the moves found by SokobanSolver
+     */
+    private static final class SolverAgent implements SokobanAgent {
+        private List<Direction> plan;
+        private int next;
+
+        public void start(SokobanGame game){
+            SokobanSolver solver = new SokobanSolver(game.getMap());
+            solver.setTimeLimit(SOLVER_TIME_LIMIT);
+            plan = solver.solve(game.getPlayerPosition(), game.getPositionBoxes());
+        }
+
+        public Direction nextMove(SokobanGame game){
+            return plan == null || next == plan.size() ? null : plan.get(next++);
+        }
+    }
+
+    /**
+     * An agent that moves in random directions
+     */
+    private static final class RandomAgent implements SokobanAgent {
+        private static final Direction[] DIRECTIONS = Direction.values();
+        private final Random random;
+
+        RandomAgent(long seed){
+            random = new Random(seed);
+        }
+
+        public Direction nextMove(SokobanGame game){
+            return DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+        }
+    }
+
+    /**
+     * An agent that plays a script of moves
+     */
+    private static final class ScriptAgent implements SokobanAgent {
+        private final String script;
+        private int next;
+
+        ScriptAgent(String script){
+            this.script = script;
+        }
+
+        public Direction nextMove(SokobanGame game){
+            while(next < script.length()){
+                switch(Character.toUpperCase(script.charAt(next++))){
+                    case 'U':
+                        return Direction.UP;
+                    case 'D':
+                        return Direction.DOWN;
+                    case 'L':
+                        return Direction.LEFT;
+                    case 'R':
+                        return Direction.RIGHT;
+                    default:
+                        break;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The outcome of playing a level
+     */
+    public static final class Result {
+        private final int level;
+        private final int moves;
+        private final boolean completed;
+        private final boolean lost;
+        private final int boxesOnGoals;
+        private final long nanos;
+
+        Result(int level, int moves, boolean completed, boolean lost, int boxesOnGoals, long nanos){
+            this.level = level;
+            this.moves = moves;
+            this.completed = completed;
+            this.lost = lost;
+            this.boxesOnGoals = boxesOnGoals;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the level played
+         *
+         * @return the level
+         */
+        public int getLevel(){
+            return level;
+        }
+
+        /**
+         * Returns the number of valid moves done in the level
+         *
+         * @return the number of moves
+         */
+        public int getNrMoves(){
+            return moves;
+        }
+
+        /**
+         * Indicates if the level was completed
+         *
+         * @return if the level was completed or not
+         */
+        public boolean levelCompleted(){
+            return completed;
+        }
+
+        /**
+         * Indicates if the level was left in a state that can not be completed
+         *
+         * @return if the level was lost or not
+         */
+        public boolean isLost(){
+            return lost;
+        }
+
+        /**
+         * Returns the number of boxes on goals at the end of the level
+         *
+         * @return the number of boxes on goals
+         */
+        public int boxesOnGoals(){
+            return boxesOnGoals;
+        }
+
+        /**
+         * Returns the wall time taken by the level, including the agent
+         *
+         * @return the wall time in nanoseconds
+         */
+        public long getNanos(){
+            return nanos;
+        }
+
+        String toCsv(){
+            return level + "," + moves + "," + completed + "," + lost + "," + boxesOnGoals + ","
+                + String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+        }
+
+        String toJson(){
+            return "{\"level\": " + level + ", \"moves\": " + moves + ", \"completed\": " + completed
+                + ", \"lost\": " + lost + ", \"boxesOnGoals\": " + boxesOnGoals + ", \"wallMs\": "
+                + String.format(Locale.ROOT, "%.3f", nanos / 1e6) + "}";
+        }
+    }
+}
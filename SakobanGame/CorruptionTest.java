@@ -0,0 +1,292 @@
+/**
+ * This class CorruptionTest checks that the binary formats of the game, the
+ * log of LevelStatsStore, the replays of ReplayRecorder and the messages of
+ * DeltaProtocol, read back what was written and reject damaged data instead
+ * of using it. It prints each failed check and ends with status 1 if any
+ * failed.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class CorruptionTest {
+
+    private static int failures;
+
+    public static void main(String[] args) throws IOException{
+        storeRoundTrip();
+        storeTornTail();
+        storeDamagedMiddle();
+        varIntRoundTrip();
+        clientMalformedMessages();
+        replayTampering();
+        if(failures > 0){
+            System.out.println(failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    /**
+     * The statistics and best replay of a level are the same after the
+     * store is reopened and after it is compacted, and a completion without a
+     * replay does not replace the best replay
+     */
+    private static void storeRoundTrip() throws IOException{
+        Path file = Files.createTempFile("stats", ".log");
+        Files.delete(file);
+        byte[] replay = {1, 2, 3};
+        try(LevelStatsStore store = new LevelStatsStore(file)){
+            store.record(1, 50, true, replay);
+            store.record(1, 40, true, null);
+            store.record(1, 60, false, null);
+            store.record(2, 7, true, new byte[] {9});
+        }
+        for(int round = 0; round < 2; round++){
+            try(LevelStatsStore store = new LevelStatsStore(file)){
+                String name = round == 0 ? "reopened" : "compacted";
+                LevelStats stats = store.getStats(1);
+                check(stats.getPlays() == 3 && stats.getCompletions() == 2 && stats.getBestMoves() == 40,
+                    name + " store keeps the statistics");
+                check(Arrays.equals(replay, store.getBestReplay(1)), name + " store keeps the best replay");
+                check(store.getStats(2).getBestMoves() == 7 && store.getBestReplay(2)[0] == 9,
+                    name + " store keeps every level");
+                check(store.getStats(3).getPlays() == 0 && store.getBestReplay(3) == null,
+                    name + " store has no level that was not played");
+                store.compact();
+            }
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * A record cut short at the end of the log is dropped and the log is
+     * truncated before it
+     */
+    private static void storeTornTail() throws IOException{
+        Path file = writeLog(10);
+        long length = Files.size(file);
+        try(FileChannel log = FileChannel.open(file, StandardOpenOption.WRITE)){
+            log.truncate(length - 3);
+        }
+        try(LevelStatsStore store = new LevelStatsStore(file)){
+            check(store.getStats(1).getPlays() == 9, "torn tail keeps the records before it");
+        }
+        check(Files.size(file) == length / 10 * 9, "torn tail is truncated");
+        try(FileChannel log = FileChannel.open(file, StandardOpenOption.WRITE)){
+            log.write(ByteBuffer.allocate(64), Files.size(file));
+        }
+        try(LevelStatsStore store = new LevelStatsStore(file)){
+            check(store.getStats(1).getPlays() == 9, "tail of zeros is dropped");
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * A damaged record followed by valid ones is reported and the log is
+     * left unchanged, whether its length or its body is damaged
+     */
+    private static void storeDamagedMiddle() throws IOException{
+        Path file = writeLog(10);
+        long recordLength = Files.size(file) / 10;
+        // the length of the third record points past the end of the log
+        damage(file, 2 * recordLength, new byte[] {0, 0, 0x10, 0});
+        byte[] before = Files.readAllBytes(file);
+        checkRejected(file, "damaged length in the middle");
+        check(Arrays.equals(before, Files.readAllBytes(file)), "log with a damaged length is left unchanged");
+        Files.delete(file);
+
+        file = writeLog(10);
+        // a byte of the body of the fifth record
+        damage(file, 4 * recordLength + 12, new byte[] {0x55});
+        before = Files.readAllBytes(file);
+        checkRejected(file, "damaged body in the middle");
+        check(Arrays.equals(before, Files.readAllBytes(file)), "log with a damaged body is left unchanged");
+        Files.delete(file);
+    }
+
+    /**
+     * Variable length integers read back what was written, and one longer
+     * than 5 bytes is rejected
+     */
+    private static void varIntRoundTrip(){
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        for(int value : new int[] {0, 1, 127, 128, 16383, 16384, 1 << 28, Integer.MAX_VALUE}){
+            buffer.clear();
+            DeltaProtocol.writeVarInt(buffer, value);
+            buffer.flip();
+            check(DeltaProtocol.readVarInt(buffer) == value && !buffer.hasRemaining(), "variable length integer "
+                + value + " round trip");
+        }
+        try{
+            DeltaProtocol.readVarInt(ByteBuffer.wrap(new byte[] {-1, -1, -1, -1, -1, 1}));
+            check(false, "variable length integer longer than 5 bytes is rejected");
+        }
+        catch(IllegalArgumentException e){
+            // expected
+        }
+    }
+
+    /**
+     * Messages of the server that can not be read, or keyframes that do not
+     * fit the map, are dropped by the client, which stays in step with the
+     * server
+     */
+    private static void clientMalformedMessages(){
+        LevelRepository levels = corridor(1);
+        LoopbackTransport[] pair = LoopbackTransport.createPair();
+        DeltaServer server = new DeltaServer(levels, 1, pair[0], 64);
+        PredictingClient client = new PredictingClient(levels, pair[1]);
+        client.poll();
+        client.move(Direction.RIGHT);
+        server.poll();
+        client.poll();
+        DeltaProtocol.Keyframe keyframe = DeltaProtocol.readKeyframe(DeltaProtocol.keyframe(1, server.getGame()));
+        check(keyframe.getLevel() == 1 && keyframe.getNrMoves() == 1 && keyframe.getPlayerCell() == 1
+            && keyframe.getNrBoxes() == 1 && keyframe.getBoxCell(0) == 2
+            && keyframe.getStateHash() == server.getGame().getStateHash(), "keyframe round trip");
+
+        ByteBuffer[] malformed = {
+            // negative, huge and too many boxes for the message
+            keyframe(1, 0, -1, 2), keyframe(1, 0, 1 << 28, 2), keyframe(1, 0, 3, 2),
+            // box cell out of the map, on the player, and a level that does not exist
+            keyframe(1, 0, 1, 99), keyframe(1, 0, 1, 0), keyframe(2, 0, 1, 2),
+            // keyframe and deltas cut short, and a delta with a number too long
+            cut(DeltaProtocol.keyframe(1, server.getGame())), ByteBuffer.wrap(new byte[] {DeltaProtocol.DELTA}),
+            ByteBuffer.wrap(new byte[] {DeltaProtocol.DELTA, 2, -1, -1, -1, -1, -1, 1}),
+            // a delta of an input never sent and a message of no known type
+            DeltaProtocol.delta(40, 5), ByteBuffer.wrap(new byte[] {9, 9})};
+        for(ByteBuffer message : malformed){
+            pair[0].send(message);
+            try{
+                client.poll();
+            }
+            catch(RuntimeException e){
+                check(false, "malformed message is dropped, not " + e);
+            }
+        }
+        check(client.getGame().getStateHash() == server.getGame().getStateHash()
+            && client.getGame().getNrMoves() == 1, "malformed messages leave the client state");
+        client.move(Direction.RIGHT);
+        client.move(Direction.RIGHT);
+        server.poll();
+        client.poll();
+        check(client.getGame().getStateHash() == server.getGame().getStateHash()
+            && client.getNrPredictions() == 0, "client stays in step after malformed messages");
+    }
+
+    /**
+     * A replay plays back the recorded moves, and a replay whose header or
+     * moves were changed is rejected
+     */
+    private static void replayTampering() throws IOException{
+        LevelRepository levels = corridor(2);
+        ReplayRecorder recorder = new ReplayRecorder(1);
+        SokobanGame game = new SokobanGame(levels, 1);
+        for(int k = 0; k < 4; k++){
+            recorder.move(game, Direction.RIGHT);
+        }
+        byte[] replay = recorder.toByteArray();
+        ReplayPlayer.Result result = ReplayPlayer.play(ByteBuffer.wrap(replay), levels);
+        check(result.getLevel() == 1 && result.getNrRecorded() == 4 && result.getNrMoves() == 4
+            && result.levelCompleted(), "replay round trip");
+
+        // the version, the level, the number of moves and the moves
+        int[] positions = {4, 8, 12, ReplayRecorder.HEADER_SIZE};
+        byte[][] values = {{ReplayRecorder.VERSION_1}, {2}, {3}, {0x15}};
+        String[] names = {"version", "level", "number of moves", "moves"};
+        for(int k = 0; k < positions.length; k++){
+            byte[] tampered = replay.clone();
+            System.arraycopy(values[k], 0, tampered, positions[k], values[k].length);
+            try{
+                ReplayPlayer.play(ByteBuffer.wrap(tampered), levels);
+                check(false, "replay with a changed " + names[k] + " is rejected");
+            }
+            catch(IOException e){
+                check(e.getMessage().equals("checksum mismatch"), "replay with a changed " + names[k]
+                    + " is rejected by its checksum, not " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns levels that are all a corridor of one row and six cells, with
+     * the player at the first cell, a box at the third and a goal at the last
+     */
+    private static LevelRepository corridor(int nrLevels){
+        return new LevelRepository(nrLevels, level -> new SokobanMap(1, 6,
+            new boolean[][] {{true, true, true, true, true, true}}, new int[][] {{0, 5}},
+            new int[][] {{0, 2}}, new int[] {0, 0}), nrLevels);
+    }
+
+    /**
+     * Encodes a keyframe of a level with one row, the player at cell 0
+     */
+    private static ByteBuffer keyframe(int level, int moves, int nrBoxes, int box){
+        ByteBuffer out = ByteBuffer.allocate(64);
+        out.put(DeltaProtocol.KEYFRAME);
+        DeltaProtocol.writeVarInt(out, 0);
+        DeltaProtocol.writeVarInt(out, level);
+        DeltaProtocol.writeVarInt(out, moves);
+        DeltaProtocol.writeVarInt(out, 0);
+        // a negative number is written as 5 bytes
+        DeltaProtocol.writeVarInt(out, nrBoxes & Integer.MAX_VALUE);
+        if(nrBoxes < 0){
+            out.put(out.position() - 1, (byte) (out.get(out.position() - 1) | 0x08));
+        }
+        DeltaProtocol.writeVarInt(out, box);
+        out.putLong(0);
+        out.flip();
+        return out;
+    }
+
+    private static ByteBuffer cut(ByteBuffer message){
+        message.limit(message.limit() - 3);
+        return message;
+    }
+
+    /**
+     * Writes a log with the given number of plays of level 1, all of the
+     * same size
+     */
+    private static Path writeLog(int plays) throws IOException{
+        Path file = Files.createTempFile("stats", ".log");
+        Files.delete(file);
+        try(LevelStatsStore store = new LevelStatsStore(file)){
+            for(int i = 0; i < plays; i++){
+                store.record(1, 10 + i, i % 2 == 0, new byte[] {1, 2, 3, 4});
+            }
+        }
+        return file;
+    }
+
+    private static void checkRejected(Path file, String name) throws IOException{
+        try{
+            new LevelStatsStore(file).close();
+            check(false, name + " is reported");
+        }
+        catch(IOException e){
+            check(e.getMessage().startsWith("damaged record"), name + " is reported");
+        }
+    }
+
+    private static void damage(Path file, long position, byte[] bytes) throws IOException{
+        try(FileChannel log = FileChannel.open(file, StandardOpenOption.WRITE)){
+            log.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    private static void check(boolean passed, String name){
+        if(!passed){
+            failures++;
+            System.out.println("FAILED: " + name);
+        }
+    }
+}
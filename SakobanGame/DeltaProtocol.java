@@ -0,0 +1,252 @@
+/**
+ * This class DeltaProtocol encodes the binary messages exchanged by a
+ * DeltaServer and its PredictingClient. The client sends each move it wants to
+ * do as an input numbered by a sequence. The server answers each input with a
+ * delta holding the history record of the move in SokobanGame: the direction
+ * the player moved and, if a box was pushed, the index of the box, which moves
+ * in the same direction. From time to time, and whenever the level changes,
+ * the server sends a keyframe with the whole state. Numbers are written as
+ * variable length integers, so an input or a delta usually takes 3 or 4 bytes.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.nio.ByteBuffer;
+
+public final class DeltaProtocol {
+
+    // a move asked by the client: sequence number and direction ordinal
+    public static final byte INPUT = 1;
+    // the result of an input: its sequence number and its history record plus 1, 0 if rejected
+    public static final byte DELTA = 2;
+    // the whole state: sequence number of the last input done, level, moves, cell of the
+    // player, number of boxes, cell of each box and hash of the state
+    public static final byte KEYFRAME = 3;
+    private static final int MAX_VARINT = 5;
+
+    private DeltaProtocol(){
+    }
+
+    /**
+     * Encodes an input
+     *
+     * @param sequence the sequence number of the input
+     * @param dir the direction of the move
+     * @return the message, ready to be read
+     * @requires {@code sequence >= 0 && dir != null}
+     */
+    public static ByteBuffer input(int sequence, Direction dir){
+        ByteBuffer out = ByteBuffer.allocate(1 + MAX_VARINT + 1);
+        out.put(INPUT);
+        writeVarInt(out, sequence);
+        out.put((byte) dir.ordinal());
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Encodes a delta
+     *
+     * @param sequence the sequence number of the input it answers
+     * @param record the history record of the move, -1 if the input was rejected
+     * @return the message, ready to be read
+     * @requires {@code sequence >= 0 && record >= -1}
+     */
+    public static ByteBuffer delta(int sequence, int record){
+        ByteBuffer out = ByteBuffer.allocate(1 + 2 * MAX_VARINT);
+        out.put(DELTA);
+        writeVarInt(out, sequence);
+        writeVarInt(out, record + 1);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Encodes a keyframe with the current state of the given match
+     *
+     * @param sequence the sequence number of the last input done, 0 if none
+     * @param game the match
+     * @return the message, ready to be read
+     * @requires {@code sequence >= 0 && game != null}
+     */
+    public static ByteBuffer keyframe(int sequence, SokobanGame game){
+        int columns = game.getColumns();
+        int[][] boxes = game.getPositionBoxes();
+        ByteBuffer out = ByteBuffer.allocate(1 + (5 + boxes.length) * MAX_VARINT + 8);
+        out.put(KEYFRAME);
+        writeVarInt(out, sequence);
+        writeVarInt(out, game.getLevel());
+        writeVarInt(out, game.getNrMoves());
+        writeVarInt(out, game.getPlayerPosition()[0] * columns + game.getPlayerPosition()[1]);
+        writeVarInt(out, boxes.length);
+        for(int[] box : boxes){
+            writeVarInt(out, box[0] * columns + box[1]);
+        }
+        out.putLong(game.getStateHash());
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Returns the type of a message without reading it
+     *
+     * @param message the message
+     * @return INPUT, DELTA or KEYFRAME, or another value if the message is not valid
+     * @requires {@code message != null && message.hasRemaining()}
+     */
+    public static byte type(ByteBuffer message){
+        return message.get(message.position());
+    }
+
+    /**
+     * Reads a keyframe
+     *
+     * @param message the message, at its start
+     * @return the keyframe, whose state is not checked against the map
+     * @throws java.nio.BufferUnderflowException if the message is too short
+     * @throws IllegalArgumentException if the number of boxes is negative or
+     *         more than the rest of the message can hold
+     * @requires {@code type(message) == KEYFRAME}
+     */
+    public static Keyframe readKeyframe(ByteBuffer message){
+        message.get();
+        int sequence = readVarInt(message);
+        int level = readVarInt(message);
+        int moves = readVarInt(message);
+        int player = readVarInt(message);
+        int nrBoxes = readVarInt(message);
+        // each box takes at least one byte, and the hash takes 8
+        if(nrBoxes < 0 || nrBoxes > message.remaining() - 8){
+            throw new IllegalArgumentException("keyframe with " + nrBoxes + " boxes in "
+                + message.remaining() + " bytes");
+        }
+        int[] boxes = new int[nrBoxes];
+        for(int k = 0; k < boxes.length; k++){
+            boxes[k] = readVarInt(message);
+        }
+        return new Keyframe(sequence, level, moves, player, boxes, message.getLong());
+    }
+
+    /**
+     * Writes a non negative integer in groups of 7 bits, the lowest first, the
+     * highest bit of each byte telling if another one follows
+     *
+     * @param out the buffer
+     * @param value the integer
+     * @requires {@code value >= 0 && out has room for 5 bytes}
+     */
+    public static void writeVarInt(ByteBuffer out, int value){
+        while((value & ~0x7F) != 0){
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads an integer written by writeVarInt
+     *
+     * @param in the buffer
+     * @return the integer
+     * @throws java.nio.BufferUnderflowException if the buffer ends before the integer
+     * @throws IllegalArgumentException if the integer is longer than 5 bytes
+     */
+    public static int readVarInt(ByteBuffer in){
+        int value = 0;
+        for(int shift = 0; shift < 7 * MAX_VARINT; shift += 7){
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("variable length integer too long");
+    }
+
+    /**
+     * The whole state of a match sent in a keyframe, with the positions as
+     * cells, row * columns + column
+     */
+    public static final class Keyframe {
+        private final int sequence;
+        private final int level;
+        private final int moves;
+        private final int player;
+        private final int[] boxes;
+        private final long stateHash;
+
+        Keyframe(int sequence, int level, int moves, int player, int[] boxes, long stateHash){
+            this.sequence = sequence;
+            this.level = level;
+            this.moves = moves;
+            this.player = player;
+            this.boxes = boxes;
+            this.stateHash = stateHash;
+        }
+
+        /**
+         * Returns the sequence number of the last input done before the keyframe
+         *
+         * @return the sequence number, 0 if no input was done
+         */
+        public int getSequence(){
+            return sequence;
+        }
+
+        /**
+         * Returns the level of the match
+         *
+         * @return the level
+         */
+        public int getLevel(){
+            return level;
+        }
+
+        /**
+         * Returns the number of moves done in the level
+         *
+         * @return the number of moves
+         */
+        public int getNrMoves(){
+            return moves;
+        }
+
+        /**
+         * Returns the cell of the player
+         *
+         * @return the cell of the player
+         */
+        public int getPlayerCell(){
+            return player;
+        }
+
+        /**
+         * Returns the number of boxes
+         *
+         * @return the number of boxes
+         */
+        public int getNrBoxes(){
+            return boxes.length;
+        }
+
+        /**
+         * Returns the cell of a box
+         *
+         * @param box index of the box
+         * @return the cell of the box
+         * @requires {@code 0 <= box && box < getNrBoxes()}
+         */
+        public int getBoxCell(int box){
+            return boxes[box];
+        }
+
+        /**
+         * Returns the hash of the state, as given by SokobanGame.getStateHash()
+         *
+         * @return the hash of the state
+         */
+        public long getStateHash(){
+            return stateHash;
+        }
+    }
+}
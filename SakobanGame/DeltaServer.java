@@ -0,0 +1,117 @@
+/**
+ * This class DeltaServer hosts the match of one client and is the authority
+ * on its state. Each input received is done on the match and answered with a
+ * delta of DeltaProtocol, and the whole state is sent as a keyframe when the
+ * server starts, when the level changes and after a given number of deltas.
+ * The server is not safe to be used by more than one thread at a time.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+public class DeltaServer {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final SokobanGame game;
+    private final DeltaTransport transport;
+    private final int keyframeInterval;
+    // sequence number of the last input done
+    private int sequence;
+    private int deltasSinceKeyframe;
+
+    /**
+     * Creates a server of a match at the given level and sends the first
+     * keyframe to the client
+     *
+     * @param levels the levels of the match
+     * @param level the level to start at
+     * @param transport the connection to the client
+     * @param keyframeInterval the number of deltas sent between two keyframes
+     * @requires {@code levels != null && 1 <= level && level <= levels.numberOfLevels() &&
+     *           transport != null && keyframeInterval > 0}
+     */
+    public DeltaServer(LevelRepository levels, int level, DeltaTransport transport, int keyframeInterval){
+        this.game = new SokobanGame(levels, level);
+        this.transport = transport;
+        this.keyframeInterval = keyframeInterval;
+        sendKeyframe();
+    }
+
+    /**
+     * Returns the match, which must only be changed through this server
+     *
+     * @return the match
+     */
+    public SokobanGame getGame(){
+        return game;
+    }
+
+    /**
+     * Does every input received so far, in order, answering each one with a
+     * delta. Inputs out of sequence and messages that can not be read are
+     * ignored, and an input is rejected when its direction is not valid or
+     * the level is completed
+     *
+     * @return the number of inputs done
+     */
+    public int poll(){
+        int done = 0;
+        ByteBuffer message;
+        while((message = transport.receive()) != null){
+            if(!message.hasRemaining() || DeltaProtocol.type(message) != DeltaProtocol.INPUT){
+                continue;
+            }
+            int input;
+            int ordinal;
+            try{
+                message.get();
+                input = DeltaProtocol.readVarInt(message);
+                ordinal = message.get();
+            }
+            catch(BufferUnderflowException | IllegalArgumentException e){
+                continue;
+            }
+            if(input <= sequence){
+                continue;
+            }
+            sequence = input;
+            int record = ordinal < 0 || ordinal >= DIRECTIONS.length || game.levelCompleted() ? -1
+                : game.applyMove(DIRECTIONS[ordinal]);
+            transport.send(DeltaProtocol.delta(input, record));
+            done++;
+            if(++deltasSinceKeyframe >= keyframeInterval){
+                sendKeyframe();
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Loads the next level of the match and sends its state to the client
+     *
+     * @requires {@code !getGame().isTerminated() && getGame().levelCompleted()}
+     */
+    public void loadNextLevel(){
+        game.loadNextLevel();
+        sendKeyframe();
+    }
+
+    /**
+     * Restarts the level of the match and sends its state to the client
+     */
+    public void restartLevel(){
+        game.restartLevel();
+        sendKeyframe();
+    }
+
+    /**
+     * Sends the whole state of the match to the client
+     */
+    private void sendKeyframe(){
+        transport.send(DeltaProtocol.keyframe(sequence, game));
+        deltasSinceKeyframe = 0;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * This interface DeltaTransport represents one end of a connection that
+ * carries the messages of DeltaProtocol in order and without losing any
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.nio.ByteBuffer;
+
+public interface DeltaTransport {
+
+    /**
+     * Sends a message to the other end
+     *
+     * @param message the message, from its position to its limit
+     * @requires {@code message != null && message.hasRemaining()}
+     */
+    void send(ByteBuffer message);
+
+    /**
+     * Takes the next message that arrived from the other end, without waiting
+     *
+     * @return the message, null if no message arrived
+     */
+    ByteBuffer receive();
+}
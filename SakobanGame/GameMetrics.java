@@ -0,0 +1,193 @@
+/**
+ * This class GameMetrics counts what happens in the matches it is given to
+ * with SokobanGame.setMetrics: moves, pushes, blocked moves, restarts and
+ * level loads, with the distribution of the time taken by move and by
+ * levelCompleted. One instance may be shared by every match of a server; the
+ * counters are LongAdders and the histograms are striped, so matches played
+ * by different threads rarely contend. The metrics can be read through JMX
+ * once registered, or written periodically as text.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class GameMetrics implements GameMetricsMBean {
+
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder pushes = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder levelLoads = new LongAdder();
+    private final LatencyHistogram moveTimes = new LatencyHistogram();
+    private final LatencyHistogram levelCompletedTimes = new LatencyHistogram();
+
+    /**
+     * Counts a move
+     *
+     * @param pushed if the move pushed a box
+     * @param valid if the move was done, false if it was blocked
+     * @param nanos the time taken by the move
+     */
+    void move(boolean pushed, boolean valid, long nanos){
+        if(!valid){
+            blocked.increment();
+        }
+        else{
+            moves.increment();
+            if(pushed){
+                pushes.increment();
+            }
+        }
+        moveTimes.record(nanos);
+    }
+
+    /**
+     * Counts a call to levelCompleted
+     *
+     * @param nanos the time taken by the call
+     */
+    void levelCompleted(long nanos){
+        levelCompletedTimes.record(nanos);
+    }
+
+    /**
+     * Counts a restart of a level
+     */
+    void restart(){
+        restarts.increment();
+    }
+
+    /**
+     * Counts the load of a new level
+     */
+    void levelLoad(){
+        levelLoads.increment();
+    }
+
+    public long getMoves(){
+        return moves.sum();
+    }
+
+    public long getPushes(){
+        return pushes.sum();
+    }
+
+    public long getBlockedMoves(){
+        return blocked.sum();
+    }
+
+    public long getRestarts(){
+        return restarts.sum();
+    }
+
+    public long getLevelLoads(){
+        return levelLoads.sum();
+    }
+
+    public long getMoveP50Nanos(){
+        return moveTimes.getPercentile(0.5);
+    }
+
+    public long getMoveP99Nanos(){
+        return moveTimes.getPercentile(0.99);
+    }
+
+    public long getMoveMaxNanos(){
+        return moveTimes.getMax();
+    }
+
+    public long getLevelCompletedChecks(){
+        return levelCompletedTimes.getCount();
+    }
+
+    public long getLevelCompletedP50Nanos(){
+        return levelCompletedTimes.getPercentile(0.5);
+    }
+
+    public long getLevelCompletedP99Nanos(){
+        return levelCompletedTimes.getPercentile(0.99);
+    }
+
+    public void reset(){
+        moves.reset();
+        pushes.reset();
+        blocked.reset();
+        restarts.reset();
+        levelLoads.reset();
+        moveTimes.reset();
+        levelCompletedTimes.reset();
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server
+     *
+     * @param name the name of the metrics, used in the object name
+     *        SokobanGame:type=GameMetrics,name=<name>
+     * @throws JMException if the name is not valid or is already registered
+     */
+    public void register(String name) throws JMException{
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+            new ObjectName("SokobanGame:type=GameMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    /**
+     * Writes the metrics as one line of text
+     *
+     * @param out where the metrics are written
+     * @throws IOException if out can not be written
+     */
+    public void dump(Appendable out) throws IOException{
+        out.append("moves=").append(Long.toString(getMoves()))
+            .append(" pushes=").append(Long.toString(getPushes()))
+            .append(" blocked=").append(Long.toString(getBlockedMoves()))
+            .append(" restarts=").append(Long.toString(getRestarts()))
+            .append(" levelLoads=").append(Long.toString(getLevelLoads()))
+            .append(" move.p50=").append(Long.toString(getMoveP50Nanos()))
+            .append("ns move.p99=").append(Long.toString(getMoveP99Nanos()))
+            .append("ns move.max=").append(Long.toString(getMoveMaxNanos()))
+            .append("ns levelCompleted.p50=").append(Long.toString(getLevelCompletedP50Nanos()))
+            .append("ns levelCompleted.p99=").append(Long.toString(getLevelCompletedP99Nanos()))
+            .append("ns\n");
+    }
+
+    /**
+     * Writes the metrics periodically on a daemon thread, until the returned
+     * task is cancelled
+     *
+     * @param out where the metrics are written
+     * @param periodMillis the time between two writes in milliseconds
+     * @return the periodic task
+     * @requires {@code out != null && periodMillis > 0}
+     */
+    public ScheduledFuture<?> startDump(Appendable out, long periodMillis){
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "GameMetrics dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the timer ends its thread once the task is cancelled or fails
+        timer.setContinueExistingPeriodicTasksAfterShutdownPolicy(true);
+        timer.setRemoveOnCancelPolicy(true);
+        ScheduledFuture<?> dumps = timer.scheduleAtFixedRate(() -> {
+            try{
+                synchronized(out){
+                    dump(out);
+                }
+            }
+            catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        timer.shutdown();
+        return dumps;
+    }
+}
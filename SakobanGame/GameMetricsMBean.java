@@ -0,0 +1,33 @@
+/**
+ * This interface GameMetricsMBean is the management interface through which
+ * JMX clients read the GameMetrics of the matches
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+public interface GameMetricsMBean {
+
+    long getMoves();
+
+    long getPushes();
+
+    long getBlockedMoves();
+
+    long getRestarts();
+
+    long getLevelLoads();
+
+    long getMoveP50Nanos();
+
+    long getMoveP99Nanos();
+
+    long getMoveMaxNanos();
+
+    long getLevelCompletedChecks();
+
+    long getLevelCompletedP50Nanos();
+
+    long getLevelCompletedP99Nanos();
+
+    void reset();
+}
@@ -0,0 +1,129 @@
+/**
+ * This class GameSnapshot defines immutable objects that represent the state
+ * of a match hosted by a SessionManager right after one of its moves
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+public final class GameSnapshot {
+
+    private final long sessionId;
+    private final long sequence;
+    private final long submitted;
+    private final int level;
+    private final int moves;
+    private final int[] playerPos;
+    private final int[][] boxes;
+    private final boolean completed;
+    private final long stateHash;
+
+    /**
+     * Creates a snapshot of the given match
+     *
+     * @param sessionId the identifier of the session of the match
+     * @param sequence the number of commands the session executed, starting at 1
+     * @param submitted the System.nanoTime() when the command was submitted
+     * @param game the match
+     * @requires {@code game != null}
+     */
+    GameSnapshot(long sessionId, long sequence, long submitted, SokobanGame game){
+        this.sessionId = sessionId;
+        this.sequence = sequence;
+        this.submitted = submitted;
+        this.level = game.getLevel();
+        this.moves = game.getNrMoves();
+        this.playerPos = game.getPlayerPosition().clone();
+        int[][] positions = game.getPositionBoxes();
+        this.boxes = new int[positions.length][];
+        for(int k = 0; k < positions.length; k++){
+            this.boxes[k] = positions[k].clone();
+        }
+        this.completed = game.levelCompleted();
+        this.stateHash = game.getStateHash();
+    }
+
+    /**
+     * Returns the identifier of the session
+     *
+     * @return the identifier of the session
+     */
+    public long getSessionId(){
+        return sessionId;
+    }
+
+    /**
+     * Returns the number of commands the session executed up to this snapshot
+     *
+     * @return the sequence number of the snapshot
+     */
+    public long getSequence(){
+        return sequence;
+    }
+
+    /**
+     * Returns the System.nanoTime() when the command of this snapshot was submitted
+     *
+     * @return the submission time in nanoseconds
+     */
+    public long getSubmitted(){
+        return submitted;
+    }
+
+    /**
+     * Returns the level of the match
+     *
+     * @return the level
+     */
+    public int getLevel(){
+        return level;
+    }
+
+    /**
+     * Returns the number of valid moves done in the level
+     *
+     * @return the number of valid moves
+     */
+    public int getNrMoves(){
+        return moves;
+    }
+
+    /**
+     * Returns the position of the player
+     *
+     * @return a copy of the position of the player
+     */
+    public int[] getPlayerPosition(){
+        return playerPos.clone();
+    }
+
+    /**
+     * Returns the position of each box
+     *
+     * @return a copy of the position of each box
+     */
+    public int[][] getPositionBoxes(){
+        int[][] positions = new int[boxes.length][];
+        for(int k = 0; k < boxes.length; k++){
+            positions[k] = boxes[k].clone();
+        }
+        return positions;
+    }
+
+    /**
+     * Indicates if the level was completed
+     *
+     * @return if the level was completed or not
+     */
+    public boolean levelCompleted(){
+        return completed;
+    }
+
+    /**
+     * Returns the hash of the positions of the player and of the boxes
+     *
+     * @return the hash of the state
+     */
+    public long getStateHash(){
+        return stateHash;
+    }
+}
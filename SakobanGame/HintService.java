@@ -0,0 +1,241 @@
+/**
+ * This class HintService finds the next move of a match on a solution with
+ * the minimum number of pushes, within a time limit that starts when the hint
+ * is asked for. The solvers of each map are kept by the service and reused,
+ * so a search does not pay for building one. The first solver of a map, and
+ * the push distances it computes, are built when the map is prepared; the
+ * first hint of a map that was not prepared, for example when its level was
+ * loaded, may take longer than the time limit by the time they take to build.
+ * Every solution found is
+ * walked from the state it was asked for, and the next move of each state on
+ * it is kept in a cache of the map, keyed by the hash of the state, so the
+ * following hints along the same solution are answered without searching.
+ * When the search runs out of time, the hint is the first move of the push
+ * that brings the boxes closest to the goals without a deadlock, among the
+ * pushes looked at in the last quarter of the time limit, kept for it.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class HintService {
+
+    private static final long DEFAULT_TIME_LIMIT = 50;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final HintService SHARED = new HintService(DEFAULT_TIME_LIMIT, DEFAULT_CAPACITY);
+
+    private final long timeLimit;
+    private final int capacity;
+    // the cache of each map, dropped when the map is no longer used
+    private final Map<SokobanMap, Cache> caches = Collections.synchronizedMap(new WeakHashMap<>());
+    // the solvers of each map not in use, softly kept since a solver keeps its map, which
+    // would otherwise never be dropped
+    private final Map<SokobanMap, Queue<SoftReference<SokobanSolver>>> solvers =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Creates a hint service
+     *
+     * @param timeLimit the maximum time of a search in milliseconds
+     * @param capacity the maximum number of states kept in the cache of a map
+     * @requires {@code timeLimit > 0 && capacity > 0}
+     */
+    public HintService(long timeLimit, int capacity){
+        this.timeLimit = timeLimit;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the hint service shared by every match, with a time limit of 50
+     * milliseconds
+     *
+     * @return the shared hint service
+     */
+    public static HintService shared(){
+        return SHARED;
+    }
+
+    /**
+     * Builds the cache and a solver of the given map, with its push
+     * distances, if they were not built yet, so that the first hint of the map
+     * is found within the time limit
+     *
+     * @param map the map
+     * @requires {@code map != null}
+     */
+    public void prepare(SokobanMap map){
+        cache(map);
+    }
+
+    /**
+     * Returns the next move of the given match on a solution, preparing its
+     * map if it was not prepared yet
+     *
+     * @param game the match
+     * @return the direction of the next move, null if the level is completed
+     *         or can not be completed from the current state
+     * @requires {@code game != null}
+     */
+    public Direction hint(SokobanGame game){
+        long start = System.nanoTime();
+        long deadline = start + timeLimit * 1000000L;
+        if(game.levelCompleted() || game.isLost()){
+            return null;
+        }
+        SokobanMap map = game.getMap();
+        Cache cache = cache(map);
+        Direction cached = cache.get(game.getStateHash());
+        if(cached != null){
+            return cached;
+        }
+        SokobanSolver solver = takeSolver(map);
+        try{
+            List<Direction> solution = solver.solve(game.getPlayerPosition(), game.getPositionBoxes(),
+                start + timeLimit * 750000L);
+            if(solution != null){
+                remember(game, solution, cache);
+                return solution.isEmpty() ? null : solution.get(0);
+            }
+            return solver.reachedLimit() ? bestPush(solver, game, deadline) : null;
+        }
+        finally{
+            releaseSolver(map, solver);
+        }
+    }
+
+    /**
+     * Returns the cache of a map, building it and a first solver of the map
+     * if there is none
+     *
+     * @param map the map
+     * @return the cache of the map
+     */
+    private Cache cache(SokobanMap map){
+        Cache cache = caches.get(map);
+        if(cache == null){
+            // built out of the lock of the caches, two threads may build a solver each
+            releaseSolver(map, new SokobanSolver(map));
+            cache = caches.computeIfAbsent(map, m -> new Cache(capacity));
+        }
+        return cache;
+    }
+
+    /**
+     * Takes a solver of a map that no one is using, building one if there is
+     * none, to be given back with releaseSolver when the search is done
+     *
+     * @param map the map
+     * @return a solver of the map used by no one else
+     */
+    private SokobanSolver takeSolver(SokobanMap map){
+        Queue<SoftReference<SokobanSolver>> idle = solvers.get(map);
+        SoftReference<SokobanSolver> kept;
+        while(idle != null && (kept = idle.poll()) != null){
+            SokobanSolver solver = kept.get();
+            if(solver != null){
+                return solver;
+            }
+        }
+        return new SokobanSolver(map);
+    }
+
+    /**
+     * Gives back a solver taken with takeSolver, so that it can be used again
+     *
+     * @param map the map of the solver
+     * @param solver the solver, no longer used by the caller
+     */
+    private void releaseSolver(SokobanMap map, SokobanSolver solver){
+        solvers.computeIfAbsent(map, m -> new ConcurrentLinkedQueue<>()).add(new SoftReference<>(solver));
+    }
+
+    /**
+     * Keeps in the cache the next move of every state of a solution
+     *
+     * @param game the match, in the first state of the solution
+     * @param solution the moves of the solution
+     * @param cache the cache of the map of the match
+     */
+    private static void remember(SokobanGame game, List<Direction> solution, Cache cache){
+        int columns = game.getColumns();
+        int[] playerPos = game.getPlayerPosition();
+        int player = playerPos[0] * columns + playerPos[1];
+        boolean[] box = new boolean[game.getRows() * columns];
+        for(int[] position : game.getPositionBoxes()){
+            box[position[0] * columns + position[1]] = true;
+        }
+        long hash = game.getStateHash();
+        for(Direction dir : solution){
+            cache.put(hash, dir);
+            int step = dir == Direction.UP ? -columns : dir == Direction.DOWN ? columns
+                : dir == Direction.LEFT ? -1 : 1;
+            int next = player + step;
+            if(box[next]){
+                box[next] = false;
+                box[next + step] = true;
+                hash ^= Zobrist.box(next) ^ Zobrist.box(next + step);
+            }
+            hash ^= Zobrist.player(player) ^ Zobrist.player(next);
+            player = next;
+        }
+    }
+
+    /**
+     * Returns the first move of the push that leaves the lowest estimate of the
+     * pushes still needed, among the pushes that do not cause a deadlock
+     * looked at before the deadline, and at least one of them
+     *
+     * @param deadline the System.nanoTime() at which no more pushes are looked at
+     * @return the direction of the move, null if every push causes a deadlock
+     */
+    private static Direction bestPush(SokobanSolver solver, SokobanGame game, long deadline){
+        int[] playerPos = game.getPlayerPosition();
+        SokobanSolver.Node root = solver.root(playerPos, game.getPositionBoxes());
+        if(root == null){
+            return null;
+        }
+        SokobanSolver.Node best = null;
+        int nrPushes = solver.findPushes(root);
+        for(int k = 0; k < nrPushes && (best == null || System.nanoTime() < deadline); k++){
+            SokobanSolver.Node child = solver.child(root, k);
+            if(child != null && (best == null || child.estimate < best.estimate)){
+                best = child;
+            }
+        }
+        return best == null ? null : solver.moves(playerPos, best).get(0);
+    }
+
+    /**
+     * The next moves of the states of a map, dropping the least recently used
+     * ones when full
+     */
+    private static final class Cache {
+        private final LinkedHashMap<Long, Direction> moves;
+
+        Cache(int capacity){
+            moves = new LinkedHashMap<Long, Direction>(16, 0.75f, true){
+                private static final long serialVersionUID = 1L;
+
+                protected boolean removeEldestEntry(Map.Entry<Long, Direction> eldest){
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized Direction get(long hash){
+            return moves.get(hash);
+        }
+
+        synchronized void put(long hash, Direction dir){
+            moves.put(hash, dir);
+        }
+    }
+}
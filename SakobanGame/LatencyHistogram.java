@@ -0,0 +1,126 @@
+/**
+ * This class LatencyHistogram counts durations in buckets of logarithmic
+ * size, like HdrHistogram: values below 32 have a bucket each and every
+ * larger power of two is split in 16 buckets, so a percentile is reported with
+ * an error below 1/16 of its value using less than 1000 buckets. The counts are
+ * split in stripes chosen by the recording thread, so threads recording at the
+ * same time rarely write to the same counter.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final int stripeMask;
+    // counts of stripe s are counts[s * BUCKETS .. (s + 1) * BUCKETS)
+    private final AtomicLongArray counts;
+
+    /**
+     * Creates an empty histogram with a stripe for each available processor
+     */
+    public LatencyHistogram(){
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        stripeMask = stripes - 1;
+        counts = new AtomicLongArray(stripes * BUCKETS);
+    }
+
+    /**
+     * Counts a duration
+     *
+     * @param nanos the duration in nanoseconds, negative durations count as 0
+     */
+    public void record(long nanos){
+        long value = Math.max(0, nanos);
+        int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        int bucket = magnitude * SUB_BUCKETS + (int) (value >>> magnitude);
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.incrementAndGet(stripe * BUCKETS + bucket);
+    }
+
+    /**
+     * Returns the number of counted durations
+     *
+     * @return the number of durations
+     */
+    public long getCount(){
+        long total = 0;
+        for(int i = 0; i < counts.length(); i++){
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the duration below which the given fraction of the counted
+     * durations are, rounded up to the end of its bucket
+     *
+     * @param fraction the percentile, between 0 and 1
+     * @return the duration in nanoseconds, 0 if no duration was counted
+     */
+    public long getPercentile(double fraction){
+        long[] merged = merged();
+        long total = 0;
+        for(long count : merged){
+            total += count;
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            seen += merged[bucket];
+            if(seen >= rank){
+                return highest(bucket);
+            }
+        }
+        return highest(BUCKETS - 1);
+    }
+
+    /**
+     * Returns the longest counted duration, rounded up to the end of its bucket
+     *
+     * @return the duration in nanoseconds, 0 if no duration was counted
+     */
+    public long getMax(){
+        return getPercentile(1);
+    }
+
+    /**
+     * Removes every counted duration; durations counted at the same time may
+     * or may not be removed
+     */
+    public void reset(){
+        for(int i = 0; i < counts.length(); i++){
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Adds the counts of every stripe
+     *
+     * @return the count of each bucket
+     */
+    private long[] merged(){
+        long[] merged = new long[BUCKETS];
+        for(int i = 0; i < counts.length(); i++){
+            merged[i % BUCKETS] += counts.get(i);
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the largest value of the given bucket
+     */
+    private static long highest(int bucket){
+        int magnitude = Math.max(0, bucket / SUB_BUCKETS - 1);
+        long lowest = (long) (bucket - magnitude * SUB_BUCKETS) << magnitude;
+        return lowest + (1L << magnitude) - 1;
+    }
+}
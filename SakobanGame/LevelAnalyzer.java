@@ -0,0 +1,223 @@
+/**
+ * This class LevelAnalyzer measures how hard each level of a set is: the
+ * pushes and moves of an optimal solution, the states the solver expanded to
+ * find it, the ratio of dead squares among the free cells, the number of boxes
+ * and the number of push states reachable from the start. Levels are analyzed
+ * in parallel, each one with a time budget for the solver and another for
+ * counting the states. Usage to write the metrics as CSV:
+ * java LevelAnalyzer [budget in milliseconds] [pack.xsb]
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class LevelAnalyzer {
+
+    private static final long DEFAULT_BUDGET = 10000;
+    private static final int MAX_STATES = 2000000;
+
+    private LevelAnalyzer(){
+    }
+
+    public static void main(String[] args) throws IOException{
+        long budget = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_BUDGET;
+        LevelRepository levels = args.length > 1 ? new XsbLevelPack(Paths.get(args[1])).levels(1024)
+            : LevelRepository.generatorLevels();
+        System.out.println("level,boxes,dead_ratio,pushes,moves,nodes_expanded,reachable_states,complete_count");
+        for(Metrics metrics : analyze(levels, budget)){
+            System.out.println(metrics.toCsv());
+        }
+    }
+
+    /**
+     * Analyzes every level of the given set in parallel
+     *
+     * @param levels the levels
+     * @param budget the time in milliseconds given to the solver and, again,
+     *        to counting the states of each level
+     * @return the metrics of each level, in order of level
+     * @requires {@code levels != null && budget > 0}
+     */
+    public static List<Metrics> analyze(LevelRepository levels, long budget){
+        return IntStream.rangeClosed(1, levels.numberOfLevels()).parallel()
+            .mapToObj(level -> analyze(level, levels.getMap(level), budget))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Analyzes one level
+     *
+     * @param level the number of the level
+     * @param map the map of the level
+     * @param budget the time in milliseconds given to the solver and, again,
+     *        to counting the states
+     * @return the metrics of the level
+     * @requires {@code map != null && budget > 0}
+     */
+    public static Metrics analyze(int level, SokobanMap map, long budget){
+        int free = 0;
+        int dead = 0;
+        for(int i = 0; i < map.getRows(); i++){
+            for(int j = 0; j < map.getColumns(); j++){
+                if(map.isOccupiable(i, j)){
+                    free++;
+                    dead += map.isDeadSquare(i, j) ? 1 : 0;
+                }
+            }
+        }
+        SokobanSolver solver = new SokobanSolver(map);
+        solver.setTimeLimit(budget);
+        List<Direction> solution = solver.solve();
+        int nodes = solver.getNodesExpanded();
+        long[] states = countStates(solver, map, budget);
+        return new Metrics(level, map.getNrBoxes(), free == 0 ? 0 : (double) dead / free,
+            solver.getPushes(), solution == null ? -1 : solution.size(), nodes, states[0], states[1] != 0);
+    }
+
+    /**
+     * Counts the push states reachable from the start of the map by a breadth
+     * first search, leaving out the states the solver prunes as deadlocks
+     *
+     * @return the number of states found and 1 if every state was found, 0 if
+     *         the budget or the maximum number of states was reached first
+     */
+    private static long[] countStates(SokobanSolver solver, SokobanMap map, long budget){
+        long deadline = System.nanoTime() + budget * 1000000L;
+        SokobanSolver.Node root = solver.root(map.getInitialPlayerPosition(), map.getInitialPositionBoxes());
+        if(root == null){
+            return new long[] {0, 1};
+        }
+        SokobanSolver.StateTable table = new SokobanSolver.StateTable(1 << 12);
+        table.putIfBetter(root.hash, 0);
+        ArrayDeque<SokobanSolver.Node> open = new ArrayDeque<>();
+        open.add(root);
+        long expanded = 0;
+        while(!open.isEmpty()){
+            if((++expanded & 255) == 0 && System.nanoTime() > deadline || table.size() > MAX_STATES){
+                return new long[] {table.size(), 0};
+            }
+            SokobanSolver.Node node = open.poll();
+            int nrPushes = solver.findPushes(node);
+            for(int k = 0; k < nrPushes; k++){
+                SokobanSolver.Node child = solver.child(node, k);
+                if(child != null && table.putIfBetter(child.hash, 0)){
+                    // the path to the state is not needed, so it is not kept
+                    open.add(new SokobanSolver.Node(child.boxes, child.player, 0, 0, null, -1, -1, child.hash));
+                }
+            }
+        }
+        return new long[] {table.size(), 1};
+    }
+
+    /**
+     * The metrics of a level
+     */
+    public static final class Metrics {
+        private final int level;
+        private final int boxes;
+        private final double deadRatio;
+        private final int pushes;
+        private final int moves;
+        private final int nodesExpanded;
+        private final long reachableStates;
+        private final boolean completeCount;
+
+        Metrics(int level, int boxes, double deadRatio, int pushes, int moves, int nodesExpanded,
+            long reachableStates, boolean completeCount){
+            this.level = level;
+            this.boxes = boxes;
+            this.deadRatio = deadRatio;
+            this.pushes = pushes;
+            this.moves = moves;
+            this.nodesExpanded = nodesExpanded;
+            this.reachableStates = reachableStates;
+            this.completeCount = completeCount;
+        }
+
+        /**
+         * Returns the number of the level
+         *
+         * @return the level
+         */
+        public int getLevel(){
+            return level;
+        }
+
+        /**
+         * Returns the number of boxes of the level
+         *
+         * @return the number of boxes
+         */
+        public int getNrBoxes(){
+            return boxes;
+        }
+
+        /**
+         * Returns the fraction of the free cells from which a box can never
+         * reach a goal
+         *
+         * @return the ratio of dead squares, between 0 and 1
+         */
+        public double getDeadRatio(){
+            return deadRatio;
+        }
+
+        /**
+         * Returns the number of pushes of an optimal solution
+         *
+         * @return the number of pushes, -1 if no solution was found within the budget
+         */
+        public int getPushes(){
+            return pushes;
+        }
+
+        /**
+         * Returns the number of moves of the optimal solution found
+         *
+         * @return the number of moves, -1 if no solution was found within the budget
+         */
+        public int getNrMoves(){
+            return moves;
+        }
+
+        /**
+         * Returns the number of states the solver expanded
+         *
+         * @return the number of expanded states
+         */
+        public int getNodesExpanded(){
+            return nodesExpanded;
+        }
+
+        /**
+         * Returns the number of push states reachable from the start without a
+         * deadlock, or found within the budget if isCompleteCount() is false
+         *
+         * @return the number of reachable states
+         */
+        public long getReachableStates(){
+            return reachableStates;
+        }
+
+        /**
+         * Indicates if every reachable state was counted within the budget
+         *
+         * @return if the count of reachable states is complete or not
+         */
+        public boolean isCompleteCount(){
+            return completeCount;
+        }
+
+        String toCsv(){
+            return level + "," + boxes + "," + String.format(Locale.ROOT, "%.3f", deadRatio) + "," + pushes + ","
+                + moves + "," + nodesExpanded + "," + reachableStates + "," + completeCount;
+        }
+    }
+}
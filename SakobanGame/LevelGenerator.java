@@ -0,0 +1,265 @@
+/**
+ * This class LevelGenerator creates new levels from a seed, a difficulty and a
+ * size. A level starts solved, with every box on a goal, and the player then
+ * pulls boxes around at random. Each pull undoes a push, so playing the pulls
+ * backwards solves the level, and every level is solvable by construction.
+ * Usage to write levels in the XSB format:
+ * java LevelGenerator count difficulty rows columns seed file
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class LevelGenerator {
+
+    // levels generated in parallel before they are written to the file
+    private static final int CHUNK_SIZE = 1024;
+    private static final int MAX_ATTEMPTS = 100;
+    private static final int[] STEP_ROW = {-1, 1, 0, 0};
+    private static final int[] STEP_COLUMN = {0, 0, -1, 1};
+
+    private LevelGenerator(){
+    }
+
+    public static void main(String[] args) throws IOException{
+        if(args.length < 6){
+            System.out.println("usage: java LevelGenerator count difficulty rows columns seed file");
+            return;
+        }
+        int count = Integer.parseInt(args[0]);
+        int difficulty = Integer.parseInt(args[1]);
+        int rows = Integer.parseInt(args[2]);
+        int columns = Integer.parseInt(args[3]);
+        long seed = Long.parseLong(args[4]);
+        try(Writer out = Files.newBufferedWriter(Paths.get(args[5]), StandardCharsets.US_ASCII)){
+            for(int first = 0; first < count; first += CHUNK_SIZE){
+                List<SokobanMap> maps = generate(seed, first, Math.min(CHUNK_SIZE, count - first),
+                    difficulty, rows, columns);
+                for(int k = 0; k < maps.size(); k++){
+                    XsbFormat.write(seed + "-" + (first + k), maps.get(k), out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates levels in parallel, level first + k uses its own seed derived
+     * from the given seed, so the same arguments always give the same levels
+     *
+     * @param seed the seed of the levels
+     * @param first number of the first level
+     * @param count number of levels
+     * @param difficulty the difficulty, from 1 to 10
+     * @param rows number of rows of the levels
+     * @param columns number of columns of the levels
+     * @return the levels in order
+     * @requires {@code first >= 0 && count >= 0 && 1 <= difficulty && difficulty <= 10 &&
+     *           rows >= 5 && columns >= 5}
+     */
+    public static List<SokobanMap> generate(long seed, int first, int count, int difficulty, int rows,
+        int columns){
+        return IntStream.range(first, first + count).parallel()
+            .mapToObj(k -> generate(Zobrist.box(k) ^ seed, difficulty, rows, columns))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Generates one level
+     *
+     * @param seed the seed of the level
+     * @param difficulty the difficulty, from 1 to 10, which sets the number of
+     *        boxes, of pulls and of inner walls
+     * @param rows number of rows of the level
+     * @param columns number of columns of the level
+     * @return the level
+     * @requires {@code 1 <= difficulty && difficulty <= 10 && rows >= 5 && columns >= 5}
+     */
+    public static SokobanMap generate(long seed, int difficulty, int rows, int columns){
+        SplittableRandom random = new SplittableRandom(seed);
+        int nrBoxes = Math.max(1, Math.min(1 + difficulty / 2, (rows - 2) * (columns - 2) / 8));
+        for(int attempt = 0; attempt < MAX_ATTEMPTS; attempt++){
+            SokobanMap map = attempt(random, difficulty, nrBoxes, rows, columns);
+            if(map != null){
+                return map;
+            }
+        }
+        throw new IllegalStateException("no level with " + nrBoxes + " boxes fits in " + rows + "x" + columns);
+    }
+
+    /**
+     * Tries to generate a level
+     *
+     * @return the level, null if the room or the pulls did not work out
+     */
+    private static SokobanMap attempt(SplittableRandom random, int difficulty, int nrBoxes, int rows,
+        int columns){
+        int cells = rows * columns;
+        boolean[] free = room(random, difficulty, rows, columns);
+        int[] freeCells = new int[cells];
+        int nrFree = 0;
+        for(int cell = 0; cell < cells; cell++){
+            if(free[cell]){
+                freeCells[nrFree++] = cell;
+            }
+        }
+        if(nrFree < nrBoxes * 4 + 1){
+            return null;
+        }
+        // goals and the player on distinct random cells, the boxes start on the goals
+        for(int k = nrFree - 1; k > nrFree - 2 - nrBoxes; k--){
+            int other = random.nextInt(k + 1);
+            int cell = freeCells[k];
+            freeCells[k] = freeCells[other];
+            freeCells[other] = cell;
+        }
+        int[] goals = new int[nrBoxes];
+        boolean[] box = new boolean[cells];
+        for(int k = 0; k < nrBoxes; k++){
+            goals[k] = freeCells[nrFree - 1 - k];
+            box[goals[k]] = true;
+        }
+        int player = freeCells[nrFree - 1 - nrBoxes];
+
+        int[] queue = new int[cells];
+        boolean[] reached = new boolean[cells];
+        int[] pulls = new int[nrBoxes * 4 * 2];
+        int nrPulls = difficulty * nrBoxes * 8;
+        for(int step = 0; step < nrPulls; step++){
+            reach(free, box, player, rows, columns, queue, reached);
+            int found = 0;
+            for(int k = 0; k < cells; k++){
+                if(!box[k]){
+                    continue;
+                }
+                for(int d = 0; d < 4; d++){
+                    // the player stands next to the box and steps back pulling it
+                    int stand = neighbour(k, d, rows, columns);
+                    int back = stand < 0 ? -1 : neighbour(stand, d, rows, columns);
+                    if(back >= 0 && reached[stand] && free[back] && !box[back]){
+                        if(found * 2 == pulls.length){
+                            pulls = Arrays.copyOf(pulls, pulls.length * 2);
+                        }
+                        pulls[found * 2] = k;
+                        pulls[found * 2 + 1] = d;
+                        found++;
+                    }
+                }
+            }
+            if(found == 0){
+                break;
+            }
+            int pull = random.nextInt(found);
+            int from = pulls[pull * 2];
+            int stand = neighbour(from, pulls[pull * 2 + 1], rows, columns);
+            box[from] = false;
+            box[stand] = true;
+            player = neighbour(stand, pulls[pull * 2 + 1], rows, columns);
+        }
+
+        boolean[][] occupiable = new boolean[rows][columns];
+        for(int cell = 0; cell < cells; cell++){
+            occupiable[cell / columns][cell % columns] = free[cell];
+        }
+        int[][] goalPositions = new int[nrBoxes][];
+        int[][] boxPositions = new int[nrBoxes][];
+        boolean solved = true;
+        for(int k = 0, b = 0; k < cells; k++){
+            if(box[k]){
+                boxPositions[b++] = new int[] {k / columns, k % columns};
+            }
+        }
+        for(int k = 0; k < nrBoxes; k++){
+            goalPositions[k] = new int[] {goals[k] / columns, goals[k] % columns};
+            solved &= box[goals[k]];
+        }
+        int[] playerPos = {player / columns, player % columns};
+        if(solved || SokobanMap.validate(rows, columns, occupiable, goalPositions, boxPositions, playerPos)
+            != MapValidation.VALID){
+            return null;
+        }
+        return new SokobanMap(rows, columns, occupiable, goalPositions, boxPositions, playerPos);
+    }
+
+    /**
+     * Creates a room surrounded by walls with random inner walls, keeping only
+     * the largest connected area free
+     *
+     * @return the free cells
+     */
+    private static boolean[] room(SplittableRandom random, int difficulty, int rows, int columns){
+        int cells = rows * columns;
+        double density = 0.04 + 0.02 * difficulty;
+        boolean[] free = new boolean[cells];
+        for(int i = 1; i < rows - 1; i++){
+            for(int j = 1; j < columns - 1; j++){
+                free[i * columns + j] = random.nextDouble() >= density;
+            }
+        }
+        int[] queue = new int[cells];
+        boolean[] reached = new boolean[cells];
+        boolean[] seen = new boolean[cells];
+        boolean[] best = new boolean[cells];
+        int bestSize = 0;
+        boolean[] none = new boolean[cells];
+        for(int cell = 0; cell < cells; cell++){
+            if(free[cell] && !seen[cell]){
+                int size = reach(free, none, cell, rows, columns, queue, reached);
+                if(size > bestSize){
+                    bestSize = size;
+                    System.arraycopy(reached, 0, best, 0, cells);
+                }
+                // cells of this area are never a new start
+                for(int k = 0; k < size; k++){
+                    seen[queue[k]] = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Marks in reached the cells reachable from start without crossing boxes
+     *
+     * @return the number of reached cells, which are also the first cells of queue
+     */
+    private static int reach(boolean[] free, boolean[] box, int start, int rows, int columns, int[] queue,
+        boolean[] reached){
+        Arrays.fill(reached, false);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        reached[start] = true;
+        while(head < tail){
+            int cell = queue[head++];
+            for(int d = 0; d < 4; d++){
+                int next = neighbour(cell, d, rows, columns);
+                if(next >= 0 && free[next] && !box[next] && !reached[next]){
+                    reached[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Returns the neighbour of a cell in the given direction
+     *
+     * @return the neighbour, -1 if it is outside the map
+     */
+    private static int neighbour(int cell, int d, int rows, int columns){
+        int row = cell / columns + STEP_ROW[d];
+        int column = cell % columns + STEP_COLUMN[d];
+        return row >= 0 && row < rows && column >= 0 && column < columns ? row * columns + column : -1;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * This class LevelRepository keeps the SokobanMap of each level, built the
+ * first time the level is asked for and shared by every match that plays it.
+ * When there are more levels than the given capacity, the least recently used
+ * maps are dropped and built again if they are needed later. A map is built
+ * without holding the lock of the repository, so that asking for other levels
+ * does not wait for it, and threads asking for a level being built wait for
+ * that build instead of starting another.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntFunction;
+
+public class LevelRepository {
+
+    private static final int GENERATOR_CAPACITY = 256;
+    private static volatile LevelRepository generatorLevels;
+
+    private final int nrLevels;
+    private final IntFunction<SokobanMap> loader;
+    // the map of each level kept, or its build while it runs
+    private final LinkedHashMap<Integer, CompletableFuture<SokobanMap>> maps;
+
+    /**
+     * Creates a repository of levels built by the given loader
+     *
+     * @param nrLevels the number of levels, numbered from 1
+     * @param loader builds the map of a level
+     * @param capacity the maximum number of maps kept
+     * @requires {@code nrLevels >= 1 && loader != null && capacity >= 1}
+     */
+    public LevelRepository(int nrLevels, IntFunction<SokobanMap> loader, int capacity){
+        this.nrLevels = nrLevels;
+        this.loader = loader;
+        this.maps = new LinkedHashMap<Integer, CompletableFuture<SokobanMap>>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<SokobanMap>> eldest){
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the repository of the levels of SokobanMapGenerator
+     *
+     * @return the repository of the generator levels
+     */
+    public static LevelRepository generatorLevels(){
+        LevelRepository levels = generatorLevels;
+        if(levels == null){
+            synchronized(LevelRepository.class){
+                levels = generatorLevels;
+                if(levels == null){
+                    levels = new LevelRepository(SokobanMapGenerator.numberOfLevels(),
+                        LevelRepository::generatorMap, GENERATOR_CAPACITY);
+                    generatorLevels = levels;
+                }
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Builds the map of the given level of SokobanMapGenerator
+     *
+     * @param level the level
+     * @return the map of the level
+     * @requires {@code 1 <= level && level <= SokobanMapGenerator.numberOfLevels()}
+     */
+    public static SokobanMap generatorMap(int level){
+        return new SokobanMap(SokobanMapGenerator.getNrRows(level), SokobanMapGenerator.getNrColumns(level),
+            SokobanMapGenerator.getOccupiableMap(level), SokobanMapGenerator.getGoals(level),
+            SokobanMapGenerator.getBoxes(level), SokobanMapGenerator.getPlayer(level));
+    }
+
+    /**
+     * Returns the number of levels
+     *
+     * @return the number of levels
+     */
+    public int numberOfLevels(){
+        return nrLevels;
+    }
+
+    /**
+     * Returns the map of the given level, building it if it is not kept, or
+     * waiting for it if another thread is building it
+     *
+     * @param level the level
+     * @return the map of the level
+     * @throws RuntimeException thrown by the loader when building the map, in
+     *         which case it is built again the next time it is asked for
+     * @requires {@code 1 <= level && level <= numberOfLevels()}
+     */
+    public SokobanMap getMap(int level){
+        CompletableFuture<SokobanMap> map;
+        boolean build = false;
+        synchronized(maps){
+            map = maps.get(level);
+            if(map == null){
+                map = new CompletableFuture<>();
+                maps.put(level, map);
+                build = true;
+            }
+        }
+        if(build){
+            try{
+                map.complete(loader.apply(level));
+            }
+            catch(RuntimeException | Error e){
+                synchronized(maps){
+                    maps.remove(level, map);
+                }
+                map.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try{
+            return map.join();
+        }
+        catch(CompletionException e){
+            // the build of another thread failed
+            Throwable cause = e.getCause();
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+}
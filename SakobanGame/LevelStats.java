@@ -0,0 +1,72 @@
+/**
+ * This class LevelStats represents the statistics of the matches of a level
+ * kept by LevelStatsStore
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+public final class LevelStats {
+
+    private final int level;
+    private final long plays;
+    private final long completions;
+    private final long completedMoves;
+    private final int bestMoves;
+
+    LevelStats(int level, long plays, long completions, long completedMoves, int bestMoves){
+        this.level = level;
+        this.plays = plays;
+        this.completions = completions;
+        this.completedMoves = completedMoves;
+        this.bestMoves = bestMoves;
+    }
+
+    /**
+     * Returns the level
+     *
+     * @return the level
+     */
+    public int getLevel(){
+        return level;
+    }
+
+    /**
+     * Returns the number of matches recorded in the level
+     *
+     * @return the number of matches
+     */
+    public long getPlays(){
+        return plays;
+    }
+
+    /**
+     * Returns the number of matches that completed the level
+     *
+     * @return the number of completions
+     */
+    public long getCompletions(){
+        return completions;
+    }
+
+    /**
+     * Returns the mean number of moves of the matches that completed the level
+     *
+     * @return the mean number of moves, 0 if the level was never completed
+     */
+    public double getAverageMoves(){
+        return completions == 0 ? 0 : (double) completedMoves / completions;
+    }
+
+    /**
+     * Returns the fewest moves with which the level was completed
+     *
+     * @return the fewest moves, -1 if the level was never completed
+     */
+    public int getBestMoves(){
+        return bestMoves;
+    }
+
+    public String toString(){
+        return "level " + level + ": " + plays + " plays, " + completions + " completions, best " + bestMoves;
+    }
+}
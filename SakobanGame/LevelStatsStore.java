@@ -0,0 +1,449 @@
+/**
+ * This class LevelStatsStore keeps, across runs, the statistics of the matches
+ * played in each level and the replay of the best completion of each level,
+ * the one with the fewest moves. Every match is appended to a log file as a
+ * record with its length and CRC32, and an index in memory, rebuilt by reading
+ * the log when the store is opened, keeps the statistics and where the best
+ * replays are. The fewest moves of a level and its best replay are kept apart,
+ * since a completion may be recorded without a replay. A last record cut short
+ * by a crash is dropped when the store is opened, while a damaged record
+ * followed by a valid one is reported and the log is left as it is. When most of the log is made of records that
+ * no longer matter, it is compacted into a summary and the best results of
+ * each level, in a new file that replaces the log only once it is complete.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+public class LevelStatsStore implements Closeable {
+
+    // a match: level, moves, completed, length of the replay and the replay
+    private static final byte PLAY = 1;
+    // the statistics of a level when the log was compacted: level, plays, completions and moves
+    private static final byte SUMMARY = 2;
+    // a best completion of a level when the log was compacted: level, moves, length and replay
+    private static final byte BEST = 3;
+    // length of the body and its checksum
+    private static final int RECORD_HEADER = 4 + 4;
+    private static final int SUMMARY_SIZE = RECORD_HEADER + 1 + 4 + 8 + 8 + 8;
+    // size of a BEST record without its replay
+    private static final int BEST_SIZE = RECORD_HEADER + 1 + 4 + 4 + 4;
+    // size of the body of the smallest record
+    private static final int MIN_BODY = BEST_SIZE - RECORD_HEADER;
+    private static final long MIN_COMPACT_SIZE = 1 << 20;
+
+    private final Path file;
+    private FileChannel channel;
+    private long size;
+    // size of the log after compacting it now
+    private long liveSize;
+    private Map<Integer, Level> levels = new HashMap<>();
+
+    /**
+     * Opens the store in the given file, creating it if it does not exist
+     *
+     * @param file the log file of the store
+     * @throws IOException if the file can not be read or written, or has a
+     *         damaged record that is not the last one
+     * @requires {@code the file is smaller than 2 GB}
+     */
+    public LevelStatsStore(Path file) throws IOException{
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try{
+            size = scan(channel, levels);
+            if(size < channel.size()){
+                channel.truncate(size);
+            }
+            channel.position(size);
+        }
+        catch(IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+        liveSize = liveSize(levels);
+    }
+
+    /**
+     * Adds the result of a match to the store
+     *
+     * @param level the level of the match
+     * @param moves the number of moves of the match
+     * @param completed if the level was completed
+     * @param replay the replay of the match, written by ReplayRecorder, null if there is none
+     * @throws IOException if the file can not be written
+     * @requires {@code level >= 1 && moves >= 0}
+     */
+    public synchronized void record(int level, int moves, boolean completed, byte[] replay) throws IOException{
+        int replayLength = replay == null ? 0 : replay.length;
+        ByteBuffer body = ByteBuffer.allocate(1 + 4 + 4 + 1 + 4 + replayLength);
+        body.put(PLAY).putInt(level).putInt(moves).put((byte) (completed ? 1 : 0)).putInt(replayLength);
+        if(replay != null){
+            body.put(replay);
+        }
+        long position = append(body);
+        liveSize += apply(levels, body, position);
+        if(size > MIN_COMPACT_SIZE && size > 2 * liveSize){
+            compact();
+        }
+    }
+
+    /**
+     * Adds the current result of the given match to the store
+     *
+     * @param game the match
+     * @param replay the recorder of the moves of the match, null if there is none
+     * @throws IOException if the file can not be written
+     * @requires {@code game != null}
+     */
+    public void record(SokobanGame game, ReplayRecorder replay) throws IOException{
+        record(game.getLevel(), game.getNrMoves(), game.levelCompleted(),
+            replay == null ? null : replay.toByteArray());
+    }
+
+    /**
+     * Returns the statistics of the given level
+     *
+     * @param level the level
+     * @return the statistics of the level, with no plays if none was recorded
+     */
+    public synchronized LevelStats getStats(int level){
+        Level stats = levels.get(level);
+        if(stats == null){
+            return new LevelStats(level, 0, 0, 0, -1);
+        }
+        return new LevelStats(level, stats.plays, stats.completions, stats.completedMoves, stats.bestMoves);
+    }
+
+    /**
+     * Returns the replay of the completion of the given level with fewest
+     * moves among the completions recorded with a replay, which may have more
+     * moves than the best of the level
+     *
+     * @param level the level
+     * @return the bytes of the replay, null if no completion with a replay was recorded
+     * @throws IOException if the file can not be read
+     */
+    public synchronized byte[] getBestReplay(int level) throws IOException{
+        Level stats = levels.get(level);
+        if(stats == null || stats.bestLength == 0){
+            return null;
+        }
+        ByteBuffer replay = ByteBuffer.allocate(stats.bestLength);
+        while(replay.hasRemaining()){
+            if(channel.read(replay, stats.bestOffset + replay.position()) < 0){
+                throw new IOException("log truncated");
+            }
+        }
+        return replay.array();
+    }
+
+    /**
+     * Forces the records added so far to the storage device
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void sync() throws IOException{
+        channel.force(false);
+    }
+
+    /**
+     * Rewrites the log with only the statistics and the best results of each
+     * level. The new log is written, forced to the storage device and read
+     * back before it atomically replaces the old one, so if any step fails the
+     * store keeps using the old log
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void compact() throws IOException{
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        Map<Integer, Level> index = new HashMap<>();
+        long compactedSize;
+        try{
+            for(Level stats : levels.values()){
+                ByteBuffer summary = ByteBuffer.allocate(SUMMARY_SIZE - RECORD_HEADER);
+                summary.put(SUMMARY).putInt(stats.level).putLong(stats.plays).putLong(stats.completions)
+                    .putLong(stats.completedMoves);
+                write(out, summary);
+                if(stats.hasBareBest()){
+                    write(out, best(stats.level, stats.bestMoves, null));
+                }
+                if(stats.bestReplayMoves >= 0){
+                    write(out, best(stats.level, stats.bestReplayMoves, getBestReplay(stats.level)));
+                }
+            }
+            out.force(true);
+            compactedSize = scan(out, index);
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException | RuntimeException e){
+            out.close();
+            Files.deleteIfExists(compacted);
+            throw e;
+        }
+        FileChannel old = channel;
+        channel = out;
+        channel.position(compactedSize);
+        levels = index;
+        size = compactedSize;
+        liveSize = liveSize(index);
+        old.close();
+    }
+
+    /**
+     * Closes the log file, forcing its records to the storage device
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void close() throws IOException{
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Builds the best completion record of a level
+     *
+     * @param level the level
+     * @param moves the moves of the completion
+     * @param replay the replay of the completion, null if there is none
+     * @return the body of the record, from its start to its position
+     */
+    private static ByteBuffer best(int level, int moves, byte[] replay){
+        int replayLength = replay == null ? 0 : replay.length;
+        ByteBuffer best = ByteBuffer.allocate(BEST_SIZE - RECORD_HEADER + replayLength);
+        best.put(BEST).putInt(level).putInt(moves).putInt(replayLength);
+        if(replay != null){
+            best.put(replay);
+        }
+        return best;
+    }
+
+    /**
+     * Reads the records of a log into an index. A record that is incomplete
+     * or does not match its checksum, with no valid record after it, is a last
+     * write cut short by a crash and is left out with the rest of the log
+     *
+     * @param log the log
+     * @param index the index the records are added to
+     * @return the length of the valid records, where the next record goes
+     * @throws IOException if the log can not be read, or a record that is
+     *         incomplete or does not match its checksum is followed by a
+     *         valid record
+     */
+    private static long scan(FileChannel log, Map<Integer, Level> index) throws IOException{
+        long length = log.size();
+        if(length == 0){
+            return 0;
+        }
+        MappedByteBuffer records = log.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        CRC32 crc = new CRC32();
+        long position = 0;
+        while(position < length){
+            int bodyLength = isRecord(records, position, crc);
+            if(bodyLength < 0){
+                if(nextRecord(records, position + 1, crc) >= 0){
+                    throw new IOException("damaged record at position " + position + " of " + length);
+                }
+                // the last record was not written completely
+                return position;
+            }
+            ByteBuffer body = records.duplicate();
+            body.position((int) position + RECORD_HEADER).limit((int) position + RECORD_HEADER + bodyLength);
+            apply(index, body.slice(), position);
+            position += RECORD_HEADER + bodyLength;
+        }
+        return position;
+    }
+
+    /**
+     * Checks if there is a whole record, of a known type and matching its
+     * checksum, at the given position of a log
+     *
+     * @param records the log
+     * @param position the position
+     * @param crc the checksum to reuse
+     * @return the length of the body of the record, -1 if there is no record
+     */
+    private static int isRecord(ByteBuffer records, long position, CRC32 crc){
+        int length = records.limit();
+        if(position + RECORD_HEADER + MIN_BODY > length){
+            return -1;
+        }
+        int bodyLength = records.getInt((int) position);
+        byte type = records.get((int) position + RECORD_HEADER);
+        if(bodyLength < MIN_BODY || bodyLength > length - position - RECORD_HEADER
+            || (type != PLAY && type != SUMMARY && type != BEST)){
+            return -1;
+        }
+        ByteBuffer body = records.duplicate();
+        body.position((int) position + RECORD_HEADER).limit((int) position + RECORD_HEADER + bodyLength);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue() == records.getInt((int) position + 4) ? bodyLength : -1;
+    }
+
+    /**
+     * Looks for the first whole record at or after the given position of a
+     * log
+     *
+     * @param records the log
+     * @param from the position to start at
+     * @param crc the checksum to reuse
+     * @return the position of the record, -1 if there is none
+     */
+    private static long nextRecord(ByteBuffer records, long from, CRC32 crc){
+        for(long position = from; position + RECORD_HEADER + MIN_BODY <= records.limit(); position++){
+            if(isRecord(records, position, crc) >= 0){
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the size of the log compacted from the given index
+     *
+     * @param index the index
+     * @return the size of the compacted log
+     */
+    private static long liveSize(Map<Integer, Level> index){
+        long live = 0;
+        for(Level stats : index.values()){
+            live += stats.liveBytes();
+        }
+        return live;
+    }
+
+    /**
+     * Appends a record with the given body to the log
+     *
+     * @return the position of the record in the log
+     */
+    private long append(ByteBuffer body) throws IOException{
+        long position = size;
+        size += write(channel, body);
+        return position;
+    }
+
+    /**
+     * Writes a record with the given body, from its start to its position,
+     * at the position of the given channel
+     *
+     * @return the number of bytes written
+     */
+    private static int write(FileChannel out, ByteBuffer body) throws IOException{
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        header.putInt(body.remaining()).putInt((int) crc.getValue()).flip();
+        int length = RECORD_HEADER + body.remaining();
+        ByteBuffer[] record = {header, body};
+        while(header.hasRemaining() || body.hasRemaining()){
+            out.write(record);
+        }
+        body.rewind();
+        return length;
+    }
+
+    /**
+     * Updates an index with the record at the given position of the log
+     *
+     * @param index the index
+     * @param body the body of the record, from its start
+     * @param position the position of the record in the log
+     * @return how much the size of the compacted log grows
+     */
+    private static long apply(Map<Integer, Level> index, ByteBuffer body, long position){
+        byte type = body.get(0);
+        int level = body.getInt(1);
+        Level stats = index.get(level);
+        if(stats == null){
+            stats = new Level(level);
+            index.put(level, stats);
+        }
+        long before = stats.liveBytes();
+        if(type == SUMMARY){
+            stats.plays += body.getLong(5);
+            stats.completions += body.getLong(13);
+            stats.completedMoves += body.getLong(21);
+            return stats.liveBytes() - before;
+        }
+        int moves = body.getInt(5);
+        // the replay starts after the type, the level, the moves, the completed flag of a
+        // play and the length of the replay
+        int replayStart = type == PLAY ? 1 + 4 + 4 + 1 + 4 : 1 + 4 + 4 + 4;
+        boolean completed = type == BEST || body.get(9) != 0;
+        if(type == PLAY){
+            stats.plays++;
+            if(completed){
+                stats.completions++;
+                stats.completedMoves += moves;
+            }
+        }
+        if(completed && (stats.bestMoves < 0 || moves < stats.bestMoves)){
+            stats.bestMoves = moves;
+        }
+        int replayLength = body.getInt(replayStart - 4);
+        // a completion without a replay never replaces the best replay
+        if(completed && replayLength > 0 && (stats.bestReplayMoves < 0 || moves < stats.bestReplayMoves)){
+            stats.bestReplayMoves = moves;
+            stats.bestOffset = position + RECORD_HEADER + replayStart;
+            stats.bestLength = replayLength;
+        }
+        return stats.liveBytes() - before;
+    }
+
+    /**
+     * The index of a level
+     */
+    private static final class Level {
+        final int level;
+        long plays;
+        long completions;
+        long completedMoves;
+        // fewest moves of a completion, -1 if there is none
+        int bestMoves = -1;
+        // fewest moves of a completion with a replay, -1 if there is none
+        int bestReplayMoves = -1;
+        // position and length of the best replay in the log
+        long bestOffset;
+        int bestLength;
+
+        Level(int level){
+            this.level = level;
+        }
+
+        /**
+         * Indicates if the best completion has no replay, so it needs its
+         * own BEST record when the log is compacted
+         */
+        boolean hasBareBest(){
+            return bestMoves >= 0 && (bestReplayMoves < 0 || bestMoves < bestReplayMoves);
+        }
+
+        /**
+         * Returns the size of the records written for the level when the log
+         * is compacted
+         */
+        long liveBytes(){
+            return SUMMARY_SIZE + (hasBareBest() ? BEST_SIZE : 0)
+                + (bestReplayMoves >= 0 ? BEST_SIZE + bestLength : 0);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This class LoopbackTransport connects two ends in the same process, each one
+ * keeping the messages sent to it in a queue until they are received, so the
+ * delay of a network is simulated by receiving them later. It counts the
+ * messages and bytes sent by each end, to measure the bandwidth of a protocol.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoopbackTransport implements DeltaTransport {
+
+    private final ConcurrentLinkedQueue<ByteBuffer> inbox = new ConcurrentLinkedQueue<>();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private LoopbackTransport peer;
+
+    private LoopbackTransport(){
+    }
+
+    /**
+     * Creates the two connected ends of a loopback connection
+     *
+     * @return the two ends, each one sending to the other
+     */
+    public static LoopbackTransport[] createPair(){
+        LoopbackTransport first = new LoopbackTransport();
+        LoopbackTransport second = new LoopbackTransport();
+        first.peer = second;
+        second.peer = first;
+        return new LoopbackTransport[] {first, second};
+    }
+
+    /**
+     * Sends a copy of the message to the other end, so the message may be
+     * reused once this method returns
+     *
+     * @param message the message, from its position to its limit
+     * @requires {@code message != null && message.hasRemaining()}
+     */
+    public void send(ByteBuffer message){
+        ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message.duplicate()).flip();
+        messagesSent.increment();
+        bytesSent.add(copy.remaining());
+        peer.inbox.add(copy);
+    }
+
+    public ByteBuffer receive(){
+        return inbox.poll();
+    }
+
+    /**
+     * Returns the number of messages waiting to be received by this end
+     *
+     * @return the number of messages in flight to this end
+     */
+    public int pending(){
+        return inbox.size();
+    }
+
+    /**
+     * Returns the number of messages sent by this end
+     *
+     * @return the number of messages sent
+     */
+    public long getMessagesSent(){
+        return messagesSent.sum();
+    }
+
+    /**
+     * Returns the number of bytes sent by this end
+     *
+     * @return the number of bytes sent
+     */
+    public long getBytesSent(){
+        return bytesSent.sum();
+    }
+}
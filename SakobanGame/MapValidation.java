@@ -0,0 +1,29 @@
+/**
+ * This enum represents the result of validating the caractheristics of a
+ * Sokoban map, either valid or the first reason found for it to be invalid
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+public enum MapValidation{
+    VALID,
+    // rows or columns not greater than 2
+    INVALID_SIZE,
+    // occupiableMap is null or not a matrix of dimension rows x columns
+    INVALID_OCCUPIABLE_MAP,
+    NO_GOALS,
+    // a goal is null, does not have 2 coordinates or is outside the map
+    INVALID_GOAL,
+    GOAL_NOT_OCCUPIABLE,
+    REPEATED_GOAL,
+    NO_BOXES,
+    // a box is null, does not have 2 coordinates or is outside the map
+    INVALID_BOX,
+    BOX_NOT_OCCUPIABLE,
+    REPEATED_BOX,
+    // the player is null, does not have 2 coordinates or is outside the map
+    INVALID_PLAYER,
+    PLAYER_NOT_OCCUPIABLE,
+    PLAYER_ON_BOX,
+    DIFFERENT_NUMBER_OF_GOALS_AND_BOXES
+}
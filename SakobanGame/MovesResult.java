@@ -0,0 +1,66 @@
+/**
+ * This class MovesResult represents the outcome of executing a sequence of
+ * moves with SokobanGame.applyMoves: how many moves were done, how many of
+ * them pushed a box and why the sequence stopped
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+public final class MovesResult {
+
+    /**
+     * Why a sequence of moves stopped
+     */
+    public enum Status {
+        // every move of the sequence was done
+        APPLIED,
+        // a move was blocked by a wall or by a box that can not be pushed
+        BLOCKED,
+        // a move was not the ordinal of a direction
+        INVALID,
+        // the level was completed, the moves after it were not done
+        COMPLETED
+    }
+
+    private final int applied;
+    private final int pushes;
+    private final Status status;
+
+    MovesResult(int applied, int pushes, Status status){
+        this.applied = applied;
+        this.pushes = pushes;
+        this.status = status;
+    }
+
+    /**
+     * Returns the number of moves done, the index of the move that stopped the
+     * sequence relative to its first move
+     *
+     * @return the number of moves done
+     */
+    public int getApplied(){
+        return applied;
+    }
+
+    /**
+     * Returns the number of moves done that pushed a box
+     *
+     * @return the number of pushes
+     */
+    public int getPushes(){
+        return pushes;
+    }
+
+    /**
+     * Returns why the sequence stopped
+     *
+     * @return the status of the sequence
+     */
+    public Status getStatus(){
+        return status;
+    }
+
+    public String toString(){
+        return status + " applied=" + applied + " pushes=" + pushes;
+    }
+}
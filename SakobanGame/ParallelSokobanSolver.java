@@ -0,0 +1,437 @@
+/**
+ * This class ParallelSokobanSolver finds solutions with the minimum number of
+ * pushes using every core. The search is the A* of SokobanSolver done in
+ * rounds: the open states are kept in buckets by their pushes plus estimate,
+ * a few of the states with the most pushes of the bucket with the lowest bound
+ * are a round, split over a ForkJoinPool whose idle workers steal the pending
+ * halves, and the new states go to their buckets, so like SokobanSolver the
+ * search goes deep first among the states of equal bound instead of expanding
+ * all of them. All the workers share
+ * a striped table of the 64 bit Zobrist hashes of the states already seen.
+ * The estimate never drops by more than one per push, so when a round starts
+ * every state with a lower bound was expanded and the first solved state found
+ * by any worker in it is optimal and stops the search.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ParallelSokobanSolver {
+
+    // states expanded by a task before it stops splitting its part of the round
+    private static final int SPLIT_SIZE = 4;
+    // states of a round for each worker
+    private static final int ROUND_SIZE = 4;
+
+    private final SokobanMap map;
+    private final int parallelism;
+    private int maxStates = 2000000;
+    private long timeLimit = 0;
+    private int nodesExpanded;
+    private int pushes = -1;
+    private boolean limitReached;
+
+    /**
+     * Creates a solver for the given map using the given number of threads
+     *
+     * @param map the map to solve
+     * @param parallelism the number of worker threads
+     * @requires {@code map != null && parallelism > 0}
+     */
+    public ParallelSokobanSolver(SokobanMap map, int parallelism){
+        this.map = map;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the maximum number of states kept in the shared set, each one uses
+     * up to 48 bytes of the set plus the memory of its node while it is open
+     *
+     * @param maxStates the maximum number of states
+     * @requires {@code maxStates > 0}
+     */
+    public void setMaxStates(int maxStates){
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Sets the maximum time a search may take, 0 means no limit
+     *
+     * @param millis the time limit in milliseconds
+     * @requires {@code millis >= 0}
+     */
+    public void setTimeLimit(long millis){
+        this.timeLimit = millis;
+    }
+
+    /**
+     * Returns the number of states expanded by the last search
+     *
+     * @return the number of expanded states
+     */
+    public int getNodesExpanded(){
+        return nodesExpanded;
+    }
+
+    /**
+     * Returns the number of pushes of the last solution found
+     *
+     * @return the number of pushes, -1 if the last search found no solution
+     */
+    public int getPushes(){
+        return pushes;
+    }
+
+    /**
+     * Indicates if the last search stopped because of the state or time limit
+     *
+     * @return the last search reached a limit
+     */
+    public boolean reachedLimit(){
+        return limitReached;
+    }
+
+    /**
+     * Solves the map from its initial state
+     *
+     * @return the moves of a solution with the minimum number of pushes,
+     *         null if there is none or a limit was reached
+     */
+    public List<Direction> solve(){
+        return solve(map.getInitialPlayerPosition(), map.getInitialPositionBoxes());
+    }
+
+    /**
+     * Solves the map from the given state
+     *
+     * @param playerPos the position of the player
+     * @param boxes the positions of the boxes
+     * @return the moves of a solution with the minimum number of pushes,
+     *         null if there is none or a limit was reached
+     * @requires {@code playerPos.length == 2 && boxes.length == number of goals of the map}
+     */
+    public List<Direction> solve(int[] playerPos, int[][] boxes){
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try{
+            return solve(pool, playerPos, boxes);
+        }
+        finally{
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Solves every level of SokobanMapGenerator, the levels are searched at
+     * the same time and share the workers of one pool
+     *
+     * @param parallelism the number of worker threads
+     * @param maxStates the maximum number of states of each level
+     * @return the moves of the solution of each level, null for the levels
+     *         without solution or that reached the limit
+     * @requires {@code parallelism > 0 && maxStates > 0}
+     */
+    public static List<List<Direction>> solveAllLevels(int parallelism, int maxStates){
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try{
+            List<ForkJoinTask<List<Direction>>> tasks = new ArrayList<>();
+            for(int level = 1; level <= LevelRepository.generatorLevels().numberOfLevels(); level++){
+                SokobanMap map = LevelRepository.generatorLevels().getMap(level);
+                ParallelSokobanSolver solver = new ParallelSokobanSolver(map, parallelism);
+                solver.setMaxStates(maxStates);
+                tasks.add(pool.submit(() -> solver.solve(pool, map.getInitialPlayerPosition(), 
+                    map.getInitialPositionBoxes())));
+            }
+            List<List<Direction>> solutions = new ArrayList<>();
+            for(ForkJoinTask<List<Direction>> task : tasks){
+                solutions.add(task.join());
+            }
+            return solutions;
+        }
+        finally{
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Searches the map one round of states at a time with the given pool
+     *
+     * @param pool the pool that expands the layers
+     * @param playerPos the position of the player
+     * @param boxes the positions of the boxes
+     * @return the moves of a solution with the minimum number of pushes,
+     *         null if there is none or a limit was reached
+     */
+    private List<Direction> solve(ForkJoinPool pool, int[] playerPos, int[][] boxes){
+        nodesExpanded = 0;
+        pushes = -1;
+        limitReached = false;
+        SokobanSolver first = new SokobanSolver(map);
+        SokobanSolver.Node root = first.root(playerPos, boxes);
+        if(root == null){
+            return null;
+        }
+        if(first.isSolved(root)){
+            pushes = 0;
+            return first.moves(playerPos, root);
+        }
+        long deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000L : Long.MAX_VALUE;
+        Search search = new Search(map, new StateSet(maxStates), deadline);
+        search.expanders.add(first);
+        search.seen.add(root.hash, 0);
+        // open states by pushes plus estimate, the buckets below bound are already expanded
+        List<Bucket> buckets = new ArrayList<>();
+        addToBucket(buckets, root);
+        for(int bound = root.estimate; bound < buckets.size() && !search.stop.get(); bound++){
+            Bucket bucket = buckets.get(bound);
+            buckets.set(bound, null);
+            List<SokobanSolver.Node> round;
+            while(bucket != null && !search.stop.get() && (round = bucket.takeDeepest(parallelism * ROUND_SIZE)) != null){
+                SokobanSolver.Node[] nodes = round.toArray(new SokobanSolver.Node[0]);
+                for(SokobanSolver.Node child : pool.invoke(new Expand(search, bound, nodes, 0, nodes.length))){
+                    if(child.pushes + child.estimate <= bound){
+                        bucket.add(child);
+                    }
+                    else{
+                        addToBucket(buckets, child);
+                    }
+                }
+            }
+        }
+        nodesExpanded = search.expanded.get();
+        SokobanSolver.Node solved = search.solution.get();
+        if(solved == null){
+            limitReached = search.stop.get();
+            return null;
+        }
+        pushes = solved.pushes;
+        return first.moves(playerPos, solved);
+    }
+
+    /**
+     * Adds a state to the bucket of its pushes plus estimate
+     *
+     * @param buckets the buckets, indexed by pushes plus estimate
+     * @param node the state
+     */
+    private static void addToBucket(List<Bucket> buckets, SokobanSolver.Node node){
+        int f = node.pushes + node.estimate;
+        while(buckets.size() <= f){
+            buckets.add(null);
+        }
+        if(buckets.get(f) == null){
+            buckets.set(f, new Bucket());
+        }
+        buckets.get(f).add(node);
+    }
+
+    /**
+     * The open states with the same pushes plus estimate, by their pushes
+     */
+    private static final class Bucket {
+        private final List<List<SokobanSolver.Node>> byPushes = new ArrayList<>();
+
+        void add(SokobanSolver.Node node){
+            while(byPushes.size() <= node.pushes){
+                byPushes.add(null);
+            }
+            if(byPushes.get(node.pushes) == null){
+                byPushes.set(node.pushes, new ArrayList<>());
+            }
+            byPushes.get(node.pushes).add(node);
+        }
+
+        /**
+         * Removes the states with the most pushes, the last added first
+         *
+         * @param max the maximum number of states removed
+         * @return the states, null if the bucket is empty
+         */
+        List<SokobanSolver.Node> takeDeepest(int max){
+            while(!byPushes.isEmpty()){
+                List<SokobanSolver.Node> deepest = byPushes.get(byPushes.size() - 1);
+                if(deepest == null){
+                    byPushes.remove(byPushes.size() - 1);
+                }
+                else if(deepest.size() <= max){
+                    byPushes.remove(byPushes.size() - 1);
+                    return deepest;
+                }
+                else{
+                    List<SokobanSolver.Node> last = deepest.subList(deepest.size() - max, deepest.size());
+                    List<SokobanSolver.Node> taken = new ArrayList<>(last);
+                    last.clear();
+                    return taken;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * State shared by the workers of one search
+     */
+    private static final class Search {
+        final SokobanMap map;
+        final StateSet seen;
+        final long deadline;
+        // solvers are only used for their scratch arrays, one per running task
+        final ConcurrentLinkedQueue<SokobanSolver> expanders = new ConcurrentLinkedQueue<>();
+        final AtomicReference<SokobanSolver.Node> solution = new AtomicReference<>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger expanded = new AtomicInteger();
+
+        Search(SokobanMap map, StateSet seen, long deadline){
+            this.map = map;
+            this.seen = seen;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Expands part of a round and returns the new states
+     */
+    private static final class Expand extends RecursiveTask<List<SokobanSolver.Node>> {
+        private static final long serialVersionUID = 1L;
+        private final Search search;
+        // pushes plus estimate of the states of the round
+        private final int bound;
+        private final SokobanSolver.Node[] nodes;
+        private final int from;
+        private final int to;
+
+        Expand(Search search, int bound, SokobanSolver.Node[] nodes, int from, int to){
+            this.search = search;
+            this.bound = bound;
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected List<SokobanSolver.Node> compute(){
+            if(to - from > SPLIT_SIZE){
+                int middle = (from + to) >>> 1;
+                Expand left = new Expand(search, bound, nodes, from, middle);
+                left.fork();
+                List<SokobanSolver.Node> right = new Expand(search, bound, nodes, middle, to).compute();
+                List<SokobanSolver.Node> result = left.join();
+                result.addAll(right);
+                return result;
+            }
+            List<SokobanSolver.Node> next = new ArrayList<>();
+            SokobanSolver expander = search.expanders.poll();
+            if(expander == null){
+                expander = new SokobanSolver(search.map);
+            }
+            int expanded = 0;
+            for(int i = from; i < to && !search.stop.get(); i++){
+                SokobanSolver.Node node = nodes[i];
+                if(node.pushes > search.seen.get(node.hash)){
+                    // reached again with fewer pushes
+                    continue;
+                }
+                if(expander.isSolved(node)){
+                    search.solution.compareAndSet(null, node);
+                    search.stop.set(true);
+                    break;
+                }
+                expanded++;
+                int nrPushes = expander.findPushes(node);
+                for(int k = 0; k < nrPushes && !search.stop.get(); k++){
+                    SokobanSolver.Node child = expander.child(node, k);
+                    if(child == null){
+                        continue;
+                    }
+                    int added = search.seen.add(child.hash, child.pushes);
+                    if(added == StateSet.FULL){
+                        search.stop.set(true);
+                    }
+                    else if(added == StateSet.ADDED){
+                        // a solved state of this round has the fewest pushes possible
+                        if(child.pushes + child.estimate <= bound && expander.isSolved(child)){
+                            search.solution.compareAndSet(null, child);
+                            search.stop.set(true);
+                        }
+                        next.add(child);
+                    }
+                }
+                if(System.nanoTime() > search.deadline){
+                    search.stop.set(true);
+                }
+            }
+            search.expanded.addAndGet(expanded);
+            search.expanders.add(expander);
+            return next;
+        }
+    }
+
+    /**
+     * Table from state hash to the fewest pushes it was reached with, split in
+     * stripes, each a growing open addressing table with its own lock, so the
+     * workers rarely wait for each other
+     */
+    static final class StateSet {
+        // results of add
+        static final int ADDED = 0;
+        static final int KNOWN = 1;
+        static final int FULL = 2;
+        private static final int STRIPES = 64;
+        private final SokobanSolver.StateTable[] tables = new SokobanSolver.StateTable[STRIPES];
+        private final AtomicInteger size = new AtomicInteger();
+        private final int maxSize;
+
+        StateSet(int maxSize){
+            this.maxSize = maxSize;
+            for(int k = 0; k < STRIPES; k++){
+                tables[k] = new SokobanSolver.StateTable(1 << 8);
+            }
+        }
+
+        /**
+         * Adds the given state, or lowers its pushes if it was reached with more
+         *
+         * @param hash the hash of a state
+         * @param pushes the pushes the state was reached with
+         * @return ADDED if the state is new or was reached with more pushes,
+         *         KNOWN if it was reached with as few pushes, FULL if it is new
+         *         and the set already has the maximum number of states
+         */
+        int add(long hash, int pushes){
+            // the low bits pick the slot inside a table, the high bits the stripe
+            SokobanSolver.StateTable table = tables[(int) (hash >>> 58)];
+            synchronized(table){
+                int known = table.get(hash);
+                if(known <= pushes){
+                    return KNOWN;
+                }
+                if(known == Integer.MAX_VALUE && size.incrementAndGet() > maxSize){
+                    size.decrementAndGet();
+                    return FULL;
+                }
+                table.putIfBetter(hash, pushes);
+                return ADDED;
+            }
+        }
+
+        /**
+         * Returns the fewest pushes the given state was reached with
+         *
+         * @param hash the hash of a state
+         * @return the pushes, Integer.MAX_VALUE if the state is not in the set
+         */
+        int get(long hash){
+            SokobanSolver.StateTable table = tables[(int) (hash >>> 58)];
+            synchronized(table){
+                return table.get(hash);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * This class PredictingClient plays a match hosted by a DeltaServer without
+ * waiting for it: each move is done at once on a local copy of the match and
+ * sent as an input, and is kept as a prediction until the delta of the server
+ * answers it. When the server did something else with an input, the client
+ * undoes the moves not yet answered, does the move of the server and repeats
+ * the moves not yet answered. A keyframe replaces the state without the moves
+ * not yet answered when it does not match the one of the client.
+ * The client is not safe to be used by more than one thread at a time.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+public class PredictingClient {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final LevelRepository levels;
+    private final DeltaTransport transport;
+    // the state of the server plus the predicted moves, null until the first keyframe
+    private SokobanGame game;
+    // sequence number of the last input sent
+    private int sequence;
+    // inputs sent and not answered yet, in order
+    private final ArrayDeque<Prediction> predictions = new ArrayDeque<>();
+    private int corrections;
+
+    /**
+     * Creates a client of the server at the other end of the given connection
+     *
+     * @param levels the levels of the match, the same of the server
+     * @param transport the connection to the server
+     * @requires {@code levels != null && transport != null}
+     */
+    public PredictingClient(LevelRepository levels, DeltaTransport transport){
+        this.levels = levels;
+        this.transport = transport;
+    }
+
+    /**
+     * Indicates if the first keyframe was received, so that there is a match
+     *
+     * @return if the client has a match or not
+     */
+    public boolean isSynchronized(){
+        return game != null;
+    }
+
+    /**
+     * Returns the local copy of the match, with the moves not yet answered by
+     * the server, which must only be changed through this client
+     *
+     * @return the match, null if the first keyframe was not received
+     */
+    public SokobanGame getGame(){
+        return game;
+    }
+
+    /**
+     * Returns the number of inputs sent and not yet answered by the server
+     *
+     * @return the number of predicted moves
+     */
+    public int getNrPredictions(){
+        return predictions.size();
+    }
+
+    /**
+     * Returns the number of times a prediction did not match the server
+     *
+     * @return the number of corrections
+     */
+    public int getCorrections(){
+        return corrections;
+    }
+
+    /**
+     * Does the given move on the local copy of the match and sends it to the
+     * server
+     *
+     * @param dir the direction of the move
+     * @requires {@code dir != null && isSynchronized()}
+     */
+    public void move(Direction dir){
+        sequence++;
+        predictions.add(new Prediction(sequence, dir, predict(dir)));
+        transport.send(DeltaProtocol.input(sequence, dir));
+    }
+
+    /**
+     * Applies every message received so far from the server, in order.
+     * Messages that can not be read, and keyframes whose state does not fit
+     * the map of their level, are ignored
+     *
+     * @return the number of messages applied
+     */
+    public int poll(){
+        int applied = 0;
+        ByteBuffer message;
+        while((message = transport.receive()) != null){
+            if(!message.hasRemaining()){
+                continue;
+            }
+            try{
+                byte type = DeltaProtocol.type(message);
+                if(type == DeltaProtocol.DELTA && game != null){
+                    message.get();
+                    int input = DeltaProtocol.readVarInt(message);
+                    applyDelta(input, DeltaProtocol.readVarInt(message) - 1);
+                    applied++;
+                }
+                else if(type == DeltaProtocol.KEYFRAME){
+                    applyKeyframe(DeltaProtocol.readKeyframe(message));
+                    applied++;
+                }
+            }
+            catch(BufferUnderflowException | IllegalArgumentException e){
+                // a message that can not be read is dropped, the next keyframe repairs the state
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Confirms or corrects the prediction of the given input
+     *
+     * @param input the sequence number of the input
+     * @param record the history record of the move done by the server, -1 if rejected
+     */
+    private void applyDelta(int input, int record){
+        Prediction first = predictions.peek();
+        if(first == null || first.sequence != input){
+            return;
+        }
+        if(first.record == record){
+            predictions.poll();
+            return;
+        }
+        corrections++;
+        undoPredictions();
+        predictions.poll();
+        if(record >= 0){
+            game.applyMove(DIRECTIONS[record & 3]);
+        }
+        redoPredictions();
+    }
+
+    /**
+     * Drops the predictions of the inputs done before the keyframe and puts
+     * the match in the state of the keyframe, if it is not already in it
+     *
+     * @param keyframe the keyframe
+     * @throws IllegalArgumentException if the state does not fit the map of
+     *         its level, in which case nothing is changed
+     */
+    private void applyKeyframe(DeltaProtocol.Keyframe keyframe){
+        checkKeyframe(keyframe);
+        if(game != null){
+            undoPredictions();
+        }
+        while(!predictions.isEmpty() && predictions.peek().sequence <= keyframe.getSequence()){
+            predictions.poll();
+        }
+        if(game == null || game.getLevel() != keyframe.getLevel() || game.getNrMoves() != keyframe.getNrMoves()
+            || game.getStateHash() != keyframe.getStateHash()){
+            if(game == null){
+                game = new SokobanGame(levels, keyframe.getLevel());
+            }
+            else if(game.getLevel() == keyframe.getLevel()){
+                corrections++;
+            }
+            int columns = levels.getMap(keyframe.getLevel()).getColumns();
+            int[][] boxes = new int[keyframe.getNrBoxes()][];
+            for(int k = 0; k < boxes.length; k++){
+                boxes[k] = new int[] {keyframe.getBoxCell(k) / columns, keyframe.getBoxCell(k) % columns};
+            }
+            int player = keyframe.getPlayerCell();
+            game.restore(keyframe.getLevel(), keyframe.getNrMoves(), new int[] {player / columns, player % columns},
+                boxes);
+        }
+        redoPredictions();
+    }
+
+    /**
+     * Checks that the state of a keyframe can be restored: its level exists,
+     * and the player and as many boxes as the goals are on distinct
+     * occupiable cells of its map
+     *
+     * @param keyframe the keyframe
+     * @throws IllegalArgumentException if the state does not fit the map
+     */
+    private void checkKeyframe(DeltaProtocol.Keyframe keyframe){
+        int level = keyframe.getLevel();
+        if(level < 1 || level > levels.numberOfLevels() || keyframe.getNrMoves() < 0){
+            throw new IllegalArgumentException("keyframe of level " + level + " with "
+                + keyframe.getNrMoves() + " moves");
+        }
+        SokobanMap map = levels.getMap(level);
+        if(keyframe.getNrBoxes() != map.getNrBoxes()){
+            throw new IllegalArgumentException("keyframe with " + keyframe.getNrBoxes() + " boxes");
+        }
+        boolean[] taken = new boolean[map.getRows() * map.getColumns()];
+        for(int k = -1; k < keyframe.getNrBoxes(); k++){
+            int cell = k < 0 ? keyframe.getPlayerCell() : keyframe.getBoxCell(k);
+            if(cell < 0 || cell >= taken.length || taken[cell]
+                || !map.isOccupiable(cell / map.getColumns(), cell % map.getColumns())){
+                throw new IllegalArgumentException("keyframe with a cell out of place: " + cell);
+            }
+            taken[cell] = true;
+        }
+    }
+
+    /**
+     * Undoes the predicted moves that were done, the last one first
+     */
+    private void undoPredictions(){
+        for(Iterator<Prediction> it = predictions.descendingIterator(); it.hasNext();){
+            if(it.next().record >= 0){
+                game.undo();
+            }
+        }
+    }
+
+    /**
+     * Does the predicted moves again, in order, on the current state
+     */
+    private void redoPredictions(){
+        for(Prediction prediction : predictions){
+            prediction.record = predict(prediction.direction);
+        }
+    }
+
+    /**
+     * Does a move on the local copy as the server would do it
+     *
+     * @param dir the direction of the move
+     * @return the history record of the move, -1 if the server would reject it
+     */
+    private int predict(Direction dir){
+        return game.levelCompleted() ? -1 : game.applyMove(dir);
+    }
+
+    /**
+     * An input sent and not yet answered
+     */
+    private static final class Prediction {
+        final int sequence;
+        final Direction direction;
+        // history record of the predicted move, -1 if it was predicted to be rejected
+        int record;
+
+        Prediction(int sequence, Direction direction, int record){
+            this.sequence = sequence;
+            this.direction = direction;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ * This class PushDistanceTable keeps, for an immutable SokobanMap, the number
+ * of pushes needed to take a box from each cell to each goal when no other box
+ * is in the way, found by pulling a box away from every goal. The distances are
+ * computed once per map, see SokobanMap.getPushDistances, and kept in a flat
+ * array. When that array would hold more than MAX_TABLE_SIZE distances, only
+ * the distance to the nearest goal is computed, by pulling from every goal at
+ * once, and the distance to a goal is bounded by the larger of it and the
+ * Manhattan distance, which is still a lower bound of the pushes needed.
+ * An Assignment gives the minimum total distance of matching boxes to
+ * goals, which is a lower bound of the pushes needed to solve a state, and is
+ * updated when a single box moves.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.util.Arrays;
+
+public class PushDistanceTable {
+
+    // the distance of a box that can never reach the goal, small enough to add them up
+    public static final int UNREACHABLE = 1 << 20;
+    // the most distances kept for every goal and cell, 64 MB
+    public static final int MAX_TABLE_SIZE = 1 << 24;
+    private static final int[] STEP_ROW = {-1, 1, 0, 0};
+    private static final int[] STEP_COLUMN = {0, 0, -1, 1};
+
+    private final int columns;
+    private final int cells;
+    private final int[] goals;
+    // push distance from each cell to each goal, indexed by goal * cells + cell,
+    // null if the table would be larger than MAX_TABLE_SIZE
+    private final int[] distances;
+    // smallest distance from each cell to any goal
+    private final int[] nearest;
+
+    /**
+     * Computes the push distances of the given map
+     *
+     * @param map the map
+     * @throws IllegalArgumentException if the map has too many cells to be
+     *         indexed by an int
+     * @requires {@code map != null}
+     */
+    PushDistanceTable(SokobanMap map){
+        int rows = map.getRows();
+        columns = map.getColumns();
+        if((long) rows * columns > Integer.MAX_VALUE - 8){
+            throw new IllegalArgumentException("map of " + rows + " x " + columns
+                + " cells is too large for a push distance table");
+        }
+        cells = rows * columns;
+        goals = new int[map.getNrBoxes()];
+        for(int k = 0; k < goals.length; k++){
+            goals[k] = map.getGoalRow(k) * columns + map.getGoalColumn(k);
+        }
+        long size = (long) goals.length * cells;
+        nearest = new int[cells];
+        int[] queue = new int[cells];
+        if(size > MAX_TABLE_SIZE){
+            distances = null;
+            pull(map, goals, nearest, 0, queue);
+            return;
+        }
+        distances = new int[(int) size];
+        Arrays.fill(nearest, UNREACHABLE);
+        int[] goal = new int[1];
+        for(int k = 0; k < goals.length; k++){
+            int offset = k * cells;
+            goal[0] = goals[k];
+            pull(map, goal, distances, offset, queue);
+            for(int cell = 0; cell < cells; cell++){
+                nearest[cell] = Math.min(nearest[cell], distances[offset + cell]);
+            }
+        }
+    }
+
+    /**
+     * Finds the pushes needed to take a box from each cell to the nearest of
+     * the given goals, by pulling a box away from them
+     *
+     * @param map the map
+     * @param sources the cells of the goals
+     * @param distances where the distance of each cell is put
+     * @param offset the position of the first cell in distances
+     * @param queue room for a queue of every cell
+     */
+    private static void pull(SokobanMap map, int[] sources, int[] distances, int offset, int[] queue){
+        int rows = map.getRows();
+        int columns = map.getColumns();
+        Arrays.fill(distances, offset, offset + rows * columns, UNREACHABLE);
+        int head = 0;
+        int tail = 0;
+        for(int source : sources){
+            if(distances[offset + source] != 0){
+                distances[offset + source] = 0;
+                queue[tail++] = source;
+            }
+        }
+        while(head < tail){
+            int box = queue[head++];
+            int row = box / columns;
+            int column = box % columns;
+            for(int d = 0; d < 4; d++){
+                // the box moves one cell and the player, pulling it, one cell further
+                int boxRow = row + STEP_ROW[d];
+                int boxColumn = column + STEP_COLUMN[d];
+                int playerRow = boxRow + STEP_ROW[d];
+                int playerColumn = boxColumn + STEP_COLUMN[d];
+                if(playerRow >= 0 && playerRow < rows && playerColumn >= 0 && playerColumn < columns
+                    && map.isOccupiable(boxRow, boxColumn) && map.isOccupiable(playerRow, playerColumn)
+                    && distances[offset + boxRow * columns + boxColumn] == UNREACHABLE){
+                    distances[offset + boxRow * columns + boxColumn] = distances[offset + box] + 1;
+                    queue[tail++] = boxRow * columns + boxColumn;
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates if the distance to each goal is exact, or only a lower bound
+     * because the table would be larger than MAX_TABLE_SIZE
+     *
+     * @return if the distances to each goal are exact
+     */
+    public boolean isExact(){
+        return distances != null;
+    }
+
+    /**
+     * Returns the number of goals of the map
+     *
+     * @return the number of goals
+     */
+    public int getNrGoals(){
+        return goals.length;
+    }
+
+    /**
+     * Returns the push distance from a cell to a goal, or a lower bound of it
+     * if the table is not exact
+     *
+     * @param goal index of the goal in the initial goals of the map
+     * @param cell index of the cell, row * columns + column
+     * @return the push distance, UNREACHABLE if the box can never reach the goal
+     * @requires {@code 0 <= goal && goal < getNrGoals() && 0 <= cell && cell < rows * columns}
+     */
+    public int distance(int goal, int cell){
+        if(distances != null){
+            return distances[goal * cells + cell];
+        }
+        int toNearest = nearest[cell];
+        if(toNearest >= UNREACHABLE){
+            return UNREACHABLE;
+        }
+        int manhattan = Math.abs(cell / columns - goals[goal] / columns)
+            + Math.abs(cell % columns - goals[goal] % columns);
+        return Math.max(manhattan, toNearest);
+    }
+
+    /**
+     * Returns the push distance from a position to a goal, or a lower bound
+     * of it if the table is not exact
+     *
+     * @param goal index of the goal in the initial goals of the map
+     * @param row row of the position
+     * @param column column of the position
+     * @return the push distance, UNREACHABLE if the box can never reach the goal
+     * @requires {@code 0 <= goal && goal < getNrGoals() && the position is inside the map}
+     */
+    public int distance(int goal, int row, int column){
+        return distance(goal, row * columns + column);
+    }
+
+    /**
+     * Returns the push distance from a cell to its nearest goal
+     *
+     * @param cell index of the cell, row * columns + column
+     * @return the push distance, UNREACHABLE if the box can never reach a goal
+     * @requires {@code 0 <= cell && cell < rows * columns}
+     */
+    public int nearestGoal(int cell){
+        return nearest[cell];
+    }
+
+    /**
+     * Creates an assignment of the given boxes to the goals
+     *
+     * @param boxes the cells of the boxes, row * columns + column
+     * @return the assignment
+     * @requires {@code boxes.length == getNrGoals()}
+     */
+    public Assignment assign(int[] boxes){
+        Assignment assignment = new Assignment();
+        assignment.reset(boxes);
+        return assignment;
+    }
+
+    /**
+     * A minimum cost matching between boxes and goals (Hungarian method) that
+     * keeps its dual variables, so that moving one box only needs one more
+     * augmenting step. An assignment is not safe to be used by more than one
+     * thread at a time.
+     */
+    public final class Assignment {
+        private final int n = goals.length;
+        private final int[] boxes = new int[n];
+        // dual variables of the boxes and goals, index 0 is a placeholder
+        private final long[] u = new long[n + 1];
+        private final long[] v = new long[n + 1];
+        // box matched to each goal, from 1, 0 if the goal is free
+        private final int[] match = new int[n + 1];
+        private final long[] minv = new long[n + 1];
+        private final int[] way = new int[n + 1];
+        private final boolean[] used = new boolean[n + 1];
+        private int cost;
+
+        private Assignment(){
+        }
+
+        /**
+         * Computes the assignment of the given boxes from scratch
+         *
+         * @param positions the cells of the boxes, row * columns + column
+         * @requires {@code positions.length == getNrGoals()}
+         */
+        public void reset(int[] positions){
+            System.arraycopy(positions, 0, boxes, 0, n);
+            Arrays.fill(u, 0);
+            Arrays.fill(v, 0);
+            Arrays.fill(match, 0);
+            for(int i = 1; i <= n; i++){
+                augment(i);
+            }
+            total();
+        }
+
+        /**
+         * Moves one box and updates the assignment
+         *
+         * @param box index of the box, as given to reset
+         * @param cell the new cell of the box
+         * @requires {@code 0 <= box && box < getNrGoals()}
+         */
+        public void moveBox(int box, int cell){
+            boxes[box] = cell;
+            int i = box + 1;
+            for(int j = 1; j <= n; j++){
+                if(match[j] == i){
+                    match[j] = 0;
+                }
+            }
+            // the new costs of the box must not go below its dual variable
+            long smallest = Long.MAX_VALUE;
+            for(int j = 1; j <= n; j++){
+                smallest = Math.min(smallest, distance(j - 1, cell) - v[j]);
+            }
+            u[i] = smallest;
+            augment(i);
+            total();
+        }
+
+        /**
+         * Makes this assignment equal to the given one, so that it can be
+         * updated by moveBox without changing the given one
+         *
+         * @param other the assignment to copy
+         * @requires {@code other != null && other was created by the same table}
+         */
+        public void copyFrom(Assignment other){
+            System.arraycopy(other.boxes, 0, boxes, 0, n);
+            System.arraycopy(other.u, 0, u, 0, n + 1);
+            System.arraycopy(other.v, 0, v, 0, n + 1);
+            System.arraycopy(other.match, 0, match, 0, n + 1);
+            cost = other.cost;
+        }
+
+        /**
+         * Returns the minimum total push distance of the boxes to distinct goals
+         *
+         * @return the total distance, UNREACHABLE if the boxes can not all reach distinct goals
+         */
+        public int cost(){
+            return cost;
+        }
+
+        /**
+         * Returns the goal assigned to a box
+         *
+         * @param box index of the box
+         * @return index of the goal
+         * @requires {@code 0 <= box && box < getNrGoals()}
+         */
+        public int goalOf(int box){
+            for(int j = 1; j <= n; j++){
+                if(match[j] == box + 1){
+                    return j - 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finds an augmenting path from the given unmatched box, keeping the
+         * dual variables feasible
+         *
+         * @param i the box, from 1
+         */
+        private void augment(int i){
+            match[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Long.MAX_VALUE);
+            Arrays.fill(used, false);
+            do{
+                used[j0] = true;
+                int i0 = match[j0];
+                int cell = boxes[i0 - 1];
+                long delta = Long.MAX_VALUE;
+                int j1 = 0;
+                for(int j = 1; j <= n; j++){
+                    if(!used[j]){
+                        long current = distance(j - 1, cell) - u[i0] - v[j];
+                        if(current < minv[j]){
+                            minv[j] = current;
+                            way[j] = j0;
+                        }
+                        if(minv[j] < delta){
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for(int j = 0; j <= n; j++){
+                    if(used[j]){
+                        u[match[j]] += delta;
+                        v[j] -= delta;
+                    }
+                    else{
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while(match[j0] != 0);
+            do{
+                int j1 = way[j0];
+                match[j0] = match[j1];
+                j0 = j1;
+            } while(j0 != 0);
+        }
+
+        /**
+         * Adds up the distances of the matched boxes
+         */
+        private void total(){
+            cost = 0;
+            for(int j = 1; j <= n; j++){
+                int distance = distance(j - 1, boxes[match[j] - 1]);
+                if(distance >= UNREACHABLE){
+                    cost = UNREACHABLE;
+                    return;
+                }
+                cost += distance;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * This class ReplayPlayer executes the replays written by ReplayRecorder
+ * against a new match, reading replay files through memory mapping. Usage to
+ * verify replay files: java ReplayPlayer file...
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class ReplayPlayer {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private ReplayPlayer(){
+    }
+
+    public static void main(String[] args){
+        LevelRepository levels = LevelRepository.generatorLevels();
+        for(String name : args){
+            try{
+                Result result = play(Paths.get(name), levels);
+                System.out.println(name + " level: " + result.getLevel() + " moves: " + result.getNrMoves()
+                    + " completed: " + result.levelCompleted());
+            }
+            catch(IOException e){
+                System.out.println(name + " invalid: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Executes the replay in the given file
+     *
+     * @param file the replay file
+     * @param levels the levels the replay was recorded in
+     * @return the result of the replay
+     * @throws IOException if the file can not be read or is not a valid replay
+     */
+    public static Result play(Path file, LevelRepository levels) throws IOException{
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return play(buffer, levels);
+        }
+    }
+
+    /**
+     * Executes the replay in the given buffer, from its position to its limit
+     *
+     * @param replay the replay
+     * @param levels the levels the replay was recorded in
+     * @return the result of the replay
+     * @throws IOException if the buffer does not hold a valid replay
+     */
+    public static Result play(ByteBuffer replay, LevelRepository levels) throws IOException{
+        ByteBuffer buffer = replay.duplicate();
+        if(buffer.remaining() < ReplayRecorder.HEADER_SIZE || buffer.getInt() != ReplayRecorder.MAGIC){
+            throw new IOException("not a replay");
+        }
+        byte version = buffer.get();
+        if(version != ReplayRecorder.VERSION && version != ReplayRecorder.VERSION_1){
+            throw new IOException("unknown replay version");
+        }
+        int level = buffer.getInt();
+        int nrMoves = buffer.getInt();
+        int checksum = buffer.getInt();
+        if(level < 1 || level > levels.numberOfLevels()){
+            throw new IOException("unknown level " + level);
+        }
+        int length = (nrMoves + 3) >>> 2;
+        if(nrMoves < 0 || buffer.remaining() != length){
+            throw new IOException("truncated replay");
+        }
+        CRC32 crc = new CRC32();
+        if(version != ReplayRecorder.VERSION_1){
+            ByteBuffer header = replay.duplicate();
+            header.position(replay.position() + ReplayRecorder.CHECKED_HEADER)
+                .limit(replay.position() + ReplayRecorder.CHECKED_HEADER + ReplayRecorder.CHECKED_HEADER_SIZE);
+            crc.update(header);
+        }
+        crc.update(buffer.duplicate());
+        if((int) crc.getValue() != checksum){
+            throw new IOException("checksum mismatch");
+        }
+        SokobanGame game = new SokobanGame(levels, level);
+        int played = 0;
+        for(int i = 0; i < length && !game.levelCompleted(); i++){
+            int packed = buffer.get();
+            for(int k = 0; k < 4 && played < nrMoves && !game.levelCompleted(); k++, played++){
+                game.move(DIRECTIONS[(packed >>> (k << 1)) & 3]);
+            }
+        }
+        return new Result(level, nrMoves, game.getNrMoves(), game.levelCompleted());
+    }
+
+    /**
+     * The outcome of executing a replay
+     */
+    public static final class Result {
+        private final int level;
+        private final int recorded;
+        private final int moves;
+        private final boolean completed;
+
+        Result(int level, int recorded, int moves, boolean completed){
+            this.level = level;
+            this.recorded = recorded;
+            this.moves = moves;
+            this.completed = completed;
+        }
+
+        /**
+         * Returns the level of the replay
+         *
+         * @return the level
+         */
+        public int getLevel(){
+            return level;
+        }
+
+        /**
+         * Returns the number of moves recorded in the replay
+         *
+         * @return the number of recorded moves
+         */
+        public int getNrRecorded(){
+            return recorded;
+        }
+
+        /**
+         * Returns the number of valid moves at the end of the replay
+         *
+         * @return the number of valid moves
+         */
+        public int getNrMoves(){
+            return moves;
+        }
+
+        /**
+         * Indicates if the level was completed at the end of the replay
+         *
+         * @return if the level was completed or not
+         */
+        public boolean levelCompleted(){
+            return completed;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * This class ReplayRecorder records the moves of a match in the compact replay
+ * format read by ReplayPlayer. A replay has a header with the magic number
+ * "SKRP", the format version, the level, the number of moves and a CRC32,
+ * followed by the moves packed four per byte, two bits each with the ordinal
+ * of the Direction, starting at the lowest bits. The CRC32 covers the version,
+ * the level, the number of moves and the packed moves, so a damaged header is
+ * found as well; in version 1 replays it covers only the packed moves.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+public class ReplayRecorder {
+
+    static final int MAGIC = 0x534B5250;
+    static final byte VERSION = 2;
+    // the first version, whose checksum covers only the moves
+    static final byte VERSION_1 = 1;
+    // magic, version, level, number of moves and checksum
+    static final int HEADER_SIZE = 4 + 1 + 4 + 4 + 4;
+    // position and size of the version, level and number of moves, covered by the checksum
+    static final int CHECKED_HEADER = 4;
+    static final int CHECKED_HEADER_SIZE = 1 + 4 + 4;
+
+    private final int level;
+    private byte[] packed = new byte[64];
+    private int nrMoves;
+
+    /**
+     * Creates a recorder of a match of the given level
+     *
+     * @param level the level of the match
+     * @requires {@code level >= 1}
+     */
+    public ReplayRecorder(int level){
+        this.level = level;
+    }
+
+    /**
+     * Executes the given move in the match and records it
+     *
+     * @param game the match
+     * @param dir the direction of the move
+     * @requires {@code game != null && dir != null && !game.levelCompleted()}
+     */
+    public void move(SokobanGame game, Direction dir){
+        game.move(dir);
+        record(dir);
+    }
+
+    /**
+     * Records a move given to SokobanGame.move
+     *
+     * @param dir the direction of the move
+     * @requires {@code dir != null}
+     */
+    public void record(Direction dir){
+        int index = nrMoves >>> 2;
+        if(index == packed.length){
+            packed = Arrays.copyOf(packed, packed.length * 2);
+        }
+        packed[index] |= dir.ordinal() << ((nrMoves & 3) << 1);
+        nrMoves++;
+    }
+
+    /**
+     * Returns the number of recorded moves
+     *
+     * @return the number of recorded moves
+     */
+    public int getNrMoves(){
+        return nrMoves;
+    }
+
+    /**
+     * Returns the level of the recorded match
+     *
+     * @return the level
+     */
+    public int getLevel(){
+        return level;
+    }
+
+    /**
+     * Returns the replay of the recorded moves
+     *
+     * @return the bytes of the replay
+     */
+    public byte[] toByteArray(){
+        int length = (nrMoves + 3) >>> 2;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length);
+        buffer.putInt(MAGIC).put(VERSION).putInt(level).putInt(nrMoves).putInt(0);
+        buffer.put(packed, 0, length);
+        byte[] replay = buffer.array();
+        CRC32 crc = new CRC32();
+        crc.update(replay, CHECKED_HEADER, CHECKED_HEADER_SIZE);
+        crc.update(packed, 0, length);
+        buffer.putInt(CHECKED_HEADER + CHECKED_HEADER_SIZE, (int) crc.getValue());
+        return replay;
+    }
+
+    /**
+     * Writes the replay of the recorded moves to the given file
+     *
+     * @param file the file, replaced if it exists
+     * @throws IOException if the file can not be written
+     */
+    public void writeTo(Path file) throws IOException{
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer buffer = ByteBuffer.wrap(toByteArray());
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        }
+    }
+}
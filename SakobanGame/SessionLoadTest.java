@@ -0,0 +1,76 @@
+/**
+ * This class SessionLoadTest measures the latency of the moves of a
+ * SessionManager hosting many matches, from the submission of a move to the
+ * delivery of its snapshot. Usage:
+ * java SessionLoadTest [sessions] [moves per session] [threads]
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SessionLoadTest {
+
+    public static void main(String[] args) throws InterruptedException{
+        int nrSessions = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int nrMoves = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        LevelRepository levels = LevelRepository.generatorLevels();
+        SessionManager manager = new SessionManager(levels, threads);
+
+        long[] latencies = new long[nrSessions * nrMoves];
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(nrSessions * nrMoves);
+        long[] ids = new long[nrSessions];
+        for(int s = 0; s < nrSessions; s++){
+            ids[s] = manager.open(s % levels.numberOfLevels() + 1, (List<GameSnapshot> batch) -> {
+                long now = System.nanoTime();
+                for(GameSnapshot snapshot : batch){
+                    latencies[received.getAndIncrement()] = now - snapshot.getSubmitted();
+                    done.countDown();
+                }
+            });
+        }
+
+        Direction[] directions = Direction.values();
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for(int m = 0; m < nrMoves; m++){
+            for(int s = 0; s < nrSessions; s++){
+                manager.submit(ids[s], directions[random.nextInt(directions.length)]);
+            }
+        }
+        if(!done.await(5, TimeUnit.MINUTES)){
+            System.out.println("timed out with " + received.get() + " of " + latencies.length + " snapshots");
+        }
+        long elapsed = System.nanoTime() - start;
+        manager.shutdown();
+
+        long[] sorted = Arrays.copyOf(latencies, received.get());
+        Arrays.sort(sorted);
+        System.out.println("sessions: " + nrSessions + " moves: " + sorted.length + " threads: " + threads);
+        System.out.println("throughput: " + (sorted.length * 1000000000L / Math.max(elapsed, 1)) + " moves/s");
+        System.out.println("p50: " + percentile(sorted, 0.50) / 1000 + " us");
+        System.out.println("p99: " + percentile(sorted, 0.99) / 1000 + " us");
+        System.out.println("max: " + (sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1000) + " us");
+    }
+
+    /**
+     * Returns the given percentile of sorted values
+     *
+     * @param sorted the values in increasing order
+     * @param fraction the percentile, between 0 and 1
+     * @return the value of the percentile, 0 if there are no values
+     */
+    private static long percentile(long[] sorted, double fraction){
+        if(sorted.length == 0){
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))];
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * This class SessionManager hosts many isolated matches at the same time.
+ * Each session owns one SokobanGame and a queue of submitted moves, and is
+ * run on a small pool of threads whenever it has moves waiting, so sessions
+ * never share a thread for longer than one batch. All the moves waiting when a
+ * session runs are executed together and their snapshots are handed to the
+ * listener of the session in one list. An exception thrown by a move or a
+ * listener is reported to the uncaught exception handler of the thread, and
+ * the session goes on with its next moves.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class SessionManager {
+
+    // moves a session executes before giving its thread to the other sessions
+    private static final int MAX_BATCH = 64;
+
+    private final LevelRepository levels;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * Creates a manager of matches of the given levels
+     *
+     * @param levels the levels of the matches
+     * @param threads the number of threads that run the sessions
+     * @requires {@code levels != null && threads > 0}
+     */
+    public SessionManager(LevelRepository levels, int threads){
+        this.levels = levels;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sokoban-session");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a session with a new match at the given level
+     *
+     * @param level the level of the match
+     * @param listener receives the snapshots of each batch of moves, called
+     *        by one thread at a time for the same session and never after the
+     *        session is closed, except for a batch it is already receiving
+     * @return the identifier of the session
+     * @requires {@code 1 <= level && level <= number of levels && listener != null}
+     */
+    public long open(int level, Consumer<List<GameSnapshot>> listener){
+        long id = nextId.getAndIncrement();
+        sessions.put(id, new Session(id, new SokobanGame(levels, level), listener));
+        return id;
+    }
+
+    /**
+     * Submits a move to the match of the given session
+     *
+     * @param sessionId the identifier of the session
+     * @param dir the direction of the move
+     * @return if the session is open or not
+     * @requires {@code dir != null}
+     */
+    public boolean submit(long sessionId, Direction dir){
+        Session session = sessions.get(sessionId);
+        if(session == null){
+            return false;
+        }
+        session.offer(dir, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Closes the given session, the moves still waiting are dropped
+     *
+     * @param sessionId the identifier of the session
+     */
+    public void close(long sessionId){
+        Session session = sessions.remove(sessionId);
+        if(session != null){
+            session.close();
+        }
+    }
+
+    /**
+     * Returns the number of open sessions
+     *
+     * @return the number of open sessions
+     */
+    public int size(){
+        return sessions.size();
+    }
+
+    /**
+     * Closes every session and stops the threads
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public void shutdown() throws InterruptedException{
+        for(Session session : sessions.values()){
+            session.close();
+        }
+        sessions.clear();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A submitted move
+     */
+    private static final class Command {
+        final Direction direction;
+        final long submitted;
+
+        Command(Direction direction, long submitted){
+            this.direction = direction;
+            this.submitted = submitted;
+        }
+    }
+
+    /**
+     * A match with its queue of moves, scheduled on the pool while it has moves
+     */
+    private final class Session implements Runnable {
+        final long id;
+        final SokobanGame game;
+        final Consumer<List<GameSnapshot>> listener;
+        final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean closed;
+        long sequence;
+
+        Session(long id, SokobanGame game, Consumer<List<GameSnapshot>> listener){
+            this.id = id;
+            this.game = game;
+            this.listener = listener;
+        }
+
+        void offer(Direction dir, long submitted){
+            commands.add(new Command(dir, submitted));
+            if(scheduled.compareAndSet(false, true)){
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Stops the session: the moves waiting are dropped and no batch is
+         * started or handed to the listener afterwards
+         */
+        void close(){
+            closed = true;
+            commands.clear();
+        }
+
+        public void run(){
+            try{
+                List<GameSnapshot> batch = new ArrayList<>();
+                Command command;
+                while(!closed && batch.size() < MAX_BATCH && (command = commands.poll()) != null){
+                    if(!game.levelCompleted()){
+                        game.move(command.direction);
+                    }
+                    batch.add(new GameSnapshot(id, ++sequence, command.submitted, game));
+                }
+                if(!closed && !batch.isEmpty()){
+                    listener.accept(batch);
+                }
+            }
+            catch(RuntimeException e){
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+            finally{
+                scheduled.set(false);
+                // a move submitted after the queue was seen empty must not wait for the next one
+                if(!closed && !commands.isEmpty() && scheduled.compareAndSet(false, true)){
+                    executor.execute(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * This interface SokobanAgent represents a player of Sokoban that chooses the
+ * moves of a match, used by BatchRunner to play levels without a graphical
+ * interface. A new agent is created for each level that is played.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+public interface SokobanAgent {
+
+    /**
+     * Called once before the first move of a level
+     *
+     * @param game the match, at the start of the level
+     */
+    default void start(SokobanGame game){
+    }
+
+    /**
+     * Chooses the next move of the match
+     *
+     * @param game the match
+     * @return the direction of the next move, null to give up the level
+     */
+    Direction nextMove(SokobanGame game);
+}
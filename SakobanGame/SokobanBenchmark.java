@@ -0,0 +1,181 @@
+/**
+ * This class SokobanBenchmark measures the hot paths of the game on synthetic
+ * square maps of several sizes and numbers of boxes: moves without boxes,
+ * pushes, blocked moves, levelCompleted, isValidMap, the SokobanMap
+ * constructor and toString. Every benchmark is warmed up before it is
+ * measured, and prints the mean and standard deviation of the measured rounds.
+ * Matches that keep a history of moves are restarted between batches of calls,
+ * outside the measured time, so the history never grows past one batch.
+ * Usage: java SokobanBenchmark [name filter]
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+public class SokobanBenchmark {
+
+    private static final int[] SIZES = {16, 64, 256};
+    private static final int[] BOX_COUNTS = {4, 64, 1024};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final long ROUND_NANOS = 200000000L;
+
+    // results are kept here so the JIT can not drop the measured work
+    private static volatile long sink;
+
+    public static void main(String[] args){
+        String filter = args.length > 0 ? args[0] : "";
+        System.out.println(String.format("%-34s %12s %10s", "benchmark", "ns/op", "+-"));
+        for(int size : SIZES){
+            for(int nrBoxes : BOX_COUNTS){
+                // the rows of boxes and of goals must not meet
+                int perRow = (size - 3) / 2;
+                if(4 * ((nrBoxes + perRow - 1) / perRow) > size - 3){
+                    continue;
+                }
+                run(filter, size, nrBoxes);
+            }
+        }
+    }
+
+    /**
+     * Runs every benchmark on a map of the given size and number of boxes
+     */
+    private static void run(String filter, int size, int nrBoxes){
+        String params = "(" + size + "x" + size + ", " + nrBoxes + " boxes)";
+        Level level = new Level(size, nrBoxes);
+        LevelRepository levels = new LevelRepository(1, l -> level.map(), 1);
+
+        SokobanGame free = new SokobanGame(levels, 1);
+        bench(filter, "move.free " + params, () -> {
+            free.move(Direction.RIGHT);
+            free.move(Direction.LEFT);
+            return free.getNrMoves();
+        }, 2, free::restartLevel);
+
+        SokobanGame push = new SokobanGame(levels, 1);
+        // the player starts right above the first box
+        bench(filter, "move.push+undo " + params, () -> {
+            push.move(Direction.DOWN);
+            push.undo();
+            return push.getNrMoves();
+        }, 2, null);
+
+        SokobanGame blocked = new SokobanGame(levels, 1);
+        bench(filter, "move.blocked " + params, () -> {
+            blocked.move(Direction.UP);
+            return blocked.getNrMoves();
+        }, 1, null);
+
+        SokobanGame completed = new SokobanGame(levels, 1);
+        bench(filter, "levelCompleted " + params, () -> completed.levelCompleted() ? 1 : 0, 1, null);
+
+        bench(filter, "isValidMap " + params, () -> SokobanMap.isValidMap(size, size, level.occupiable,
+            level.goals, level.boxes, level.player) ? 1 : 0, 1, null);
+
+        bench(filter, "SokobanMap.new " + params, () -> level.map().getRows(), 1, null);
+
+        SokobanGame rendered = new SokobanGame(levels, 1);
+        bench(filter, "toString " + params, () -> {
+            rendered.move(Direction.RIGHT);
+            rendered.move(Direction.LEFT);
+            return rendered.toString().length();
+        }, 1, rendered::restartLevel);
+    }
+
+    /**
+     * Warms up and measures one benchmark, printing its time per operation
+     *
+     * @param filter only benchmarks whose name contains it are run
+     * @param name the name of the benchmark
+     * @param op the measured work, returning a value that is kept in sink
+     * @param opsPerCall number of operations done by each call of op
+     * @param reset work done before each batch of calls and not measured, null if none
+     */
+    private static void bench(String filter, String name, Op op, int opsPerCall, Runnable reset){
+        if(!name.contains(filter)){
+            return;
+        }
+        for(int round = 0; round < WARMUP_ROUNDS; round++){
+            measure(op, reset);
+        }
+        double[] results = new double[ROUNDS];
+        double mean = 0;
+        for(int round = 0; round < ROUNDS; round++){
+            results[round] = measure(op, reset) / opsPerCall;
+            mean += results[round] / ROUNDS;
+        }
+        double variance = 0;
+        for(int round = 0; round < ROUNDS; round++){
+            variance += (results[round] - mean) * (results[round] - mean) / ROUNDS;
+        }
+        System.out.println(String.format("%-34s %12.1f %10.1f", name, mean, Math.sqrt(variance)));
+    }
+
+    /**
+     * Calls op for one round, in batches of 256 calls
+     *
+     * @param reset work done before each batch and not measured, null if none
+     * @return the mean time of a call in nanoseconds
+     */
+    private static double measure(Op op, Runnable reset){
+        long calls = 0;
+        long result = 0;
+        long elapsed = 0;
+        do{
+            if(reset != null){
+                reset.run();
+            }
+            long start = System.nanoTime();
+            for(int i = 0; i < 256; i++){
+                result += op.run();
+            }
+            elapsed += System.nanoTime() - start;
+            calls += 256;
+        } while(elapsed < ROUND_NANOS);
+        sink += result;
+        return (double) elapsed / calls;
+    }
+
+    /**
+     * The measured work of a benchmark
+     */
+    private interface Op {
+        long run();
+    }
+
+    /**
+     * A square map surrounded by walls, with the boxes in a grid on the upper
+     * left part, the goals on the lower right part and the player above the
+     * first box
+     */
+    private static final class Level {
+        final int size;
+        final boolean[][] occupiable;
+        final int[][] goals;
+        final int[][] boxes;
+        final int[] player;
+
+        Level(int size, int nrBoxes){
+            this.size = size;
+            occupiable = new boolean[size][size];
+            for(int i = 1; i < size - 1; i++){
+                for(int j = 1; j < size - 1; j++){
+                    occupiable[i][j] = true;
+                }
+            }
+            boxes = new int[nrBoxes][];
+            goals = new int[nrBoxes][];
+            // boxes on every other cell so each one can be pushed down
+            int perRow = (size - 3) / 2;
+            for(int k = 0; k < nrBoxes; k++){
+                boxes[k] = new int[] {2 + (k / perRow) * 2, 2 + (k % perRow) * 2};
+                goals[k] = new int[] {size - 2 - (k / perRow) * 2, size - 2 - (k % perRow) * 2};
+            }
+            player = new int[] {1, 2};
+        }
+
+        SokobanMap map(){
+            return new SokobanMap(size, size, occupiable, goals, boxes, player);
+        }
+    }
+}
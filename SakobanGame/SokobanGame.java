@@ -4,7 +4,10 @@
  * @author fc58208 Maria Rocha
  * @author fc57234 Miguel Henriques
  */
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class SokobanGame {
 
@@ -18,23 +21,164 @@ public class SokobanGame {
     private static final int[] MOVE_D = {1,0};
     private static final int[] MOVE_L = {0,-1};
     private static final int[] MOVE_R = {0,1};
-    private static Direction direction = Direction.DOWN;
-    private boolean[][] occupiableMap;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private Direction direction = Direction.DOWN;
+    private final LevelRepository levels;
     private int rows;
     private int columns;
+    // bitsets indexed by row * columns + column, the static ones shared with the map
+    private long[] freeCells;
+    private long[] goalCells;
+    private long[] boxCells;
+    // boxes being checked for a freeze deadlock, always left empty
+    private long[] freezeScratch;
+    // index in boxes of the box standing on each cell, -1 if there is none
+    private int[] boxIndex;
+    private int boxesOnGoals;
+    private boolean lost;
+    // number of moves in history when the level was lost, -1 if it is not lost
+    private int lostAt = -1;
+    // done moves are history[0..historySize), undone ones history[historySize..redoSize)
+    // each record is the direction ordinal plus (index of the pushed box + 1) << 2
+    private int[] history = new int[64];
+    private int historySize;
+    private int redoSize;
+    private long hash;
+    private SokobanRenderer renderer;
+    private GameMetrics metrics;
+    // incremented whenever a box moves, the reachable cells are kept until it changes
+    private int boxVersion;
+    // cells reached by the last search from reachRoot are reachQueue[0..reachSize) and the
+    // cells whose reachStamp is reachGeneration, reachFrom is the direction used to reach them
+    private int[] reachQueue;
+    private int[] reachStamp;
+    private byte[] reachFrom;
+    private int reachGeneration;
+    private int reachRoot = -1;
+    private int reachVersion = -1;
+    private int reachSize;
 
     /**
      * Creates a new match with the mapa and the initial positions of goals
      * boxes and players at level 1
      */
     public SokobanGame(){
-        occupiableMap = SokobanMapGenerator.getOccupiableMap(level);
-        rows = SokobanMapGenerator.getNrRows(level);
-        columns = SokobanMapGenerator.getNrColumns(level); 
-        playerPos = SokobanMapGenerator.getPlayer(level);
-        boxes = SokobanMapGenerator.getBoxes(level);
-        goals = SokobanMapGenerator.getGoals(level);
-        map = new SokobanMap(rows, columns, occupiableMap, goals, boxes, playerPos);
+        this(LevelRepository.generatorLevels(), 1);
+    }
+
+    /**
+     * Creates a new match at the given level of the given levels
+     * 
+     * @param levels the levels of the match
+     * @param level the level to start at
+     * @requires {@code levels != null && 1 <= level && level <= levels.numberOfLevels()}
+     */
+    public SokobanGame(LevelRepository levels, int level){
+        this.levels = levels;
+        this.level = level;
+        loadLevel();
+    }
+
+    /**
+     * Loads the map of the current level, sharing its static layers, and copies
+     * the initial positions of the player and of the boxes
+     */
+    private void loadLevel(){
+        map = levels.getMap(level);
+        rows = map.getRows();
+        columns = map.getColumns();
+        goals = map.getInitialPositionGoals();
+        freeCells = map.freeCells();
+        goalCells = map.goalCells();
+        boxCells = new long[freeCells.length];
+        freezeScratch = new long[freeCells.length];
+        boxIndex = new int[rows * columns];
+        reachQueue = new int[rows * columns];
+        reachStamp = new int[rows * columns];
+        reachFrom = new byte[rows * columns];
+        reachGeneration = 0;
+        playerPos = map.getInitialPlayerPosition();
+        boxes = map.getInitialPositionBoxes();
+        initBoxes();
+    }
+
+    /**
+     * Fills the box layer and the box index of each cell with the current boxes,
+     * and clears the history of moves
+     */
+    private void initBoxes(){
+        lost = false;
+        lostAt = -1;
+        historySize = 0;
+        redoSize = 0;
+        hash = Zobrist.player(playerPos[0] * columns + playerPos[1]);
+        Arrays.fill(boxCells, 0L);
+        Arrays.fill(boxIndex, -1);
+        boxesOnGoals = 0;
+        boxVersion++;
+        for(int k = 0; k < boxes.length; k++){
+            int cell = boxes[k][0] * columns + boxes[k][1];
+            boxCells[cell >>> 6] |= 1L << cell;
+            boxIndex[cell] = k;
+            hash ^= Zobrist.box(cell);
+            if(isGoal(cell)){
+                boxesOnGoals++;
+            }
+        }
+    }
+
+    /**
+     * Checks if the given position is inside the map and has no wall
+     * 
+     * @param i row of the position
+     * @param j column of the position
+     * @return the position is inside the map and occupiable
+     */
+    private boolean isFree(int i, int j){
+        if(i < 0 || i >= rows || j < 0 || j >= columns){
+            return false;
+        }
+        int cell = i * columns + j;
+        return (freeCells[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Checks if there is a box on the given cell
+     * 
+     * @param cell index of the cell, row * columns + column
+     * @return there is a box on the cell
+     */
+    private boolean hasBox(int cell){
+        return (boxCells[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Checks if there is a goal on the given cell
+     * 
+     * @param cell index of the cell, row * columns + column
+     * @return there is a goal on the cell
+     */
+    private boolean isGoal(int cell){
+        return (goalCells[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Sets the metrics where the moves, restarts and level loads of this match
+     * are counted
+     * 
+     * @param metrics the metrics, null to stop counting
+     */
+    public void setMetrics(GameMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the map of the current level
+     * 
+     * @return the map of the current level
+     */
+    SokobanMap getMap(){
+        return map;
     }
 
     /**
@@ -128,11 +272,176 @@ public class SokobanGame {
      * @requires {@code dir=!null && !levelCompleted()}
      */
     public void move(Direction dir){
-        
+        applyMove(dir);
+    }
+
+    /**
+     * Executes the moves of the given sequence in order, stopping at the first
+     * blocked move or when the level is completed
+     * 
+     * @param moves the directions of the moves
+     * @param from index of the first move
+     * @param to index after the last move
+     * @return the number of moves done, of boxes pushed and why the sequence stopped
+     * @requires {@code moves != null && 0 <= from && from <= to && to <= moves.length &&
+     *           the moves are not null}
+     */
+    public MovesResult applyMoves(Direction[] moves, int from, int to){
+        int applied = 0;
+        int pushes = 0;
+        MovesResult.Status status = MovesResult.Status.APPLIED;
+        for(int k = from; k < to; k++){
+            if(isCompleted()){
+                status = MovesResult.Status.COMPLETED;
+                break;
+            }
+            int record = applyMove(moves[k]);
+            if(record < 0){
+                status = MovesResult.Status.BLOCKED;
+                break;
+            }
+            applied++;
+            pushes += record > 3 ? 1 : 0;
+        }
+        if(status == MovesResult.Status.APPLIED && isCompleted()){
+            status = MovesResult.Status.COMPLETED;
+        }
+        return new MovesResult(applied, pushes, status);
+    }
+
+    /**
+     * Executes the moves of the given sequence in order, stopping at the first
+     * blocked or invalid move or when the level is completed
+     * 
+     * @param moves the ordinals of the directions of the moves
+     * @param from index of the first move
+     * @param to index after the last move
+     * @return the number of moves done, of boxes pushed and why the sequence stopped
+     * @requires {@code moves != null && 0 <= from && from <= to && to <= moves.length}
+     */
+    public MovesResult applyMoves(byte[] moves, int from, int to){
+        int applied = 0;
+        int pushes = 0;
+        MovesResult.Status status = MovesResult.Status.APPLIED;
+        for(int k = from; k < to; k++){
+            if(isCompleted()){
+                status = MovesResult.Status.COMPLETED;
+                break;
+            }
+            int ordinal = moves[k];
+            if(ordinal < 0 || ordinal >= DIRECTIONS.length){
+                status = MovesResult.Status.INVALID;
+                break;
+            }
+            int record = applyMove(DIRECTIONS[ordinal]);
+            if(record < 0){
+                status = MovesResult.Status.BLOCKED;
+                break;
+            }
+            applied++;
+            pushes += record > 3 ? 1 : 0;
+        }
+        if(status == MovesResult.Status.APPLIED && isCompleted()){
+            status = MovesResult.Status.COMPLETED;
+        }
+        return new MovesResult(applied, pushes, status);
+    }
+
+    /**
+     * Executes one move, counting it in the metrics if there are any
+     * 
+     * @param dir the direction of the move
+     * @return the history record of the move, the direction ordinal plus (index
+     *         of the pushed box + 1) << 2, -1 if the move is blocked
+     */
+    int applyMove(Direction dir){
+        GameMetrics counted = metrics;
+        long start = counted == null ? 0 : System.nanoTime();
         direction = dir;
+        int record = step(dir);
+        if(record >= 0){
+            addHistory(record);
+        }
+        if(counted != null){
+            counted.move(record > 3, record >= 0, System.nanoTime() - start);
+        }
+        return record;
+    }
 
+    /**
+     * Adds a done move to the history, dropping the undone moves
+     * 
+     * @param record the history record of the move
+     */
+    private void addHistory(int record){
+        if(historySize == history.length){
+            history = Arrays.copyOf(history, history.length * 2);
+        }
+        history[historySize++] = record;
+        redoSize = historySize;
+    }
+
+    /**
+     * Undoes the last move done in the current level
+     * 
+     * @return if there was a move to undo or not
+     */
+    public boolean undo(){
+        if(historySize == 0){
+            return false;
+        }
+        int record = history[--historySize];
+        int[] movement = movement(DIRECTIONS[record & 3]);
+        int box = (record >>> 2) - 1;
+        int row = playerPos[0];
+        int column = playerPos[1];
+        movePlayer(row - movement[0], column - movement[1]);
+        if(box >= 0){
+            moveBox(box, (row + movement[0]) * columns + column + movement[1], row, column);
+        }
+        if(historySize < lostAt){
+            lost = false;
+            lostAt = -1;
+        }
+        moves--;
+        direction = DIRECTIONS[record & 3];
+        return true;
+    }
+
+    /**
+     * Redoes the last undone move, if no move was done since it was undone
+     * 
+     * @return if there was a move to redo or not
+     */
+    public boolean redo(){
+        if(historySize == redoSize){
+            return false;
+        }
+        direction = DIRECTIONS[history[historySize] & 3];
+        step(direction);
+        historySize++;
+        return true;
+    }
+
+    /**
+     * Returns the hash of the current positions of the player and of the boxes,
+     * equal positions always have the same hash
+     * 
+     * @return the hash of the current state
+     */
+    public long getStateHash(){
+        return hash;
+    }
+
+    /**
+     * Returns the movement of the given direction
+     * 
+     * @param dir the direction
+     * @return the change of row and column of the direction
+     */
+    private static int[] movement(Direction dir){
         int[] movement = MOVE_D;
-        switch (direction) {
+        switch (dir) {
             case UP:
                 movement = MOVE_U;
                 break;
@@ -146,52 +455,201 @@ public class SokobanGame {
                 movement = MOVE_R;
                 break;
         }
-        int[] nextPos = {playerPos[0] + movement[0], playerPos[1] + movement[1]};
-        int[] nextNextPos = {playerPos[0] + movement[0] * 2 , playerPos[1] + movement[1] * 2};
-        boolean checkRows = nextPos[0] >= 0 && nextPos[0] <= getRows();
-        boolean checkColumns = nextPos[1] >= 0 && nextPos[1] <= getColumns();
-        boolean BoxesInRows = nextNextPos[0] >= 0 && nextNextPos[0] <= getRows();
-        boolean BoxesInColumns = nextNextPos[1] >= 0 && nextNextPos[1] <= getColumns();
-        boolean checkBox = false;
-        boolean boxNextToBox = false;
-        if (checkRows && checkColumns){
-            if (isOccupiable(nextPos[0],nextPos[1])){
-                for(int i = 0; i < boxes.length; i++){
-                    if(i < boxes.length){
-                        if(Arrays.equals(boxes[i],nextPos)){
-                            checkBox = true;
-                        }
-                        if(BoxesInRows && BoxesInColumns && checkBox){
-                            if (isOccupiable(nextNextPos[0],nextNextPos[1])){
-                                for(int j = 0; j < boxes.length; j++){
-                                    if(Arrays.equals(boxes[j],nextNextPos)){
-                                        boxNextToBox = true;
-                                    }
-                                    if(!boxNextToBox && j == boxes.length - 1){
-                                        playerPos[0] += movement[0];
-                                        playerPos[1] += movement[1];
-                                        nextPos[0] += movement[0];
-                                        nextPos[1] += movement[1];
-                                        boxes[i][0] += movement[0];
-                                        boxes[i][1] += movement[1];
-                                        i = boxes.length;
-                                        j = boxes.length;
-                                        moves++;
-                                    }
-                                }
-                            }
-                        }
-                        
-                    }
-                    if(!checkBox && i == boxes.length - 1){
-                        playerPos[0] += movement[0];
-                        playerPos[1] += movement[1]; 
-                        i = boxes.length;
-                        moves++;
-                    }
+        return movement;
+    }
+
+    /**
+     * Moves the player one cell in the given direction, pushing the box in front
+     * 
+     * @param dir the direction of the move
+     * @return the history record of the move, -1 if the move is blocked
+     */
+    private int step(Direction dir){
+        int[] movement = movement(dir);
+        int nextRow = playerPos[0] + movement[0];
+        int nextColumn = playerPos[1] + movement[1];
+        if(!isFree(nextRow, nextColumn)){
+            return -1;
+        }
+        int next = nextRow * columns + nextColumn;
+        int box = -1;
+        if(hasBox(next)){
+            int afterRow = nextRow + movement[0];
+            int afterColumn = nextColumn + movement[1];
+            if(!isFree(afterRow, afterColumn) || hasBox(afterRow * columns + afterColumn)){
+                return -1;
+            }
+            box = boxIndex[next];
+            moveBox(box, next, afterRow, afterColumn);
+            if(!lost && (map.isDeadSquare(afterRow, afterColumn) 
+                || map.isFreezeDeadlock(boxCells, freezeScratch, afterRow, afterColumn))){
+                lost = true;
+                lostAt = historySize + 1;
+            }
+        }
+        movePlayer(nextRow, nextColumn);
+        moves++;
+        return dir.ordinal() | (box + 1) << 2;
+    }
+
+    /**
+     * Moves a box to the given position
+     * 
+     * @param box index of the box
+     * @param from cell of the box
+     * @param row row of the new position
+     * @param column column of the new position
+     */
+    private void moveBox(int box, int from, int row, int column){
+        int to = row * columns + column;
+        boxCells[from >>> 6] &= ~(1L << from);
+        boxCells[to >>> 6] |= 1L << to;
+        boxIndex[from] = -1;
+        boxIndex[to] = box;
+        boxes[box][0] = row;
+        boxes[box][1] = column;
+        hash ^= Zobrist.box(from) ^ Zobrist.box(to);
+        boxVersion++;
+        if(isGoal(from)){
+            boxesOnGoals--;
+        }
+        if(isGoal(to)){
+            boxesOnGoals++;
+        }
+    }
+
+    /**
+     * Moves the player to the given position
+     * 
+     * @param row row of the new position
+     * @param column column of the new position
+     */
+    private void movePlayer(int row, int column){
+        hash ^= Zobrist.player(playerPos[0] * columns + playerPos[1]) ^ Zobrist.player(row * columns + column);
+        playerPos[0] = row;
+        playerPos[1] = column;
+    }
+
+    /**
+     * Checks if the player can walk to the given position without pushing boxes
+     * 
+     * @param i row of the position
+     * @param j column of the position
+     * @return the position is reachable
+     */
+    public boolean isReachable(int i, int j){
+        if(i < 0 || i >= rows || j < 0 || j >= columns){
+            return false;
+        }
+        reachRegion();
+        return reachStamp[i * columns + j] == reachGeneration;
+    }
+
+    /**
+     * Returns the positions the player can walk to without pushing boxes,
+     * including the current one
+     * 
+     * @return the reachable positions
+     */
+    public int[][] getReachablePositions(){
+        reachRegion();
+        int[][] positions = new int[reachSize][];
+        for(int k = 0; k < reachSize; k++){
+            positions[k] = new int[] {reachQueue[k] / columns, reachQueue[k] % columns};
+        }
+        return positions;
+    }
+
+    /**
+     * Returns a shortest walk of the player to the given position without
+     * pushing boxes
+     * 
+     * @param i row of the position
+     * @param j column of the position
+     * @return the directions of the walk, empty if the player is already there,
+     *         null if the position is not reachable
+     */
+    public List<Direction> pathTo(int i, int j){
+        if(i < 0 || i >= rows || j < 0 || j >= columns){
+            return null;
+        }
+        reach(playerPos[0] * columns + playerPos[1]);
+        int cell = i * columns + j;
+        if(reachStamp[cell] != reachGeneration){
+            return null;
+        }
+        List<Direction> path = new ArrayList<>();
+        while(cell != reachRoot){
+            Direction dir = DIRECTIONS[reachFrom[cell]];
+            int[] movement = movement(dir);
+            path.add(dir);
+            cell -= movement[0] * columns + movement[1];
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Makes sure the last search found the cells reachable by the player,
+     * searching again only if a box moved or the player left the searched area
+     */
+    private void reachRegion(){
+        int player = playerPos[0] * columns + playerPos[1];
+        if(reachVersion != boxVersion || reachStamp[player] != reachGeneration){
+            reach(player);
+        }
+    }
+
+    /**
+     * Finds the cells reachable from the given cell without pushing boxes, in
+     * order of distance, unless the last search already did
+     * 
+     * @param root index of the cell, row * columns + column
+     */
+    private void reach(int root){
+        if(root == reachRoot && reachVersion == boxVersion && reachStamp[root] == reachGeneration){
+            return;
+        }
+        // a new generation marks every cell as not reached without clearing reachStamp
+        if(++reachGeneration == 0){
+            Arrays.fill(reachStamp, 0);
+            reachGeneration = 1;
+        }
+        reachRoot = root;
+        reachVersion = boxVersion;
+        int head = 0;
+        int tail = 0;
+        reachQueue[tail++] = root;
+        reachStamp[root] = reachGeneration;
+        while(head < tail){
+            int cell = reachQueue[head++];
+            int row = cell / columns;
+            int column = cell % columns;
+            for(int d = 0; d < DIRECTIONS.length; d++){
+                int[] movement = movement(DIRECTIONS[d]);
+                int nextRow = row + movement[0];
+                int nextColumn = column + movement[1];
+                int next = nextRow * columns + nextColumn;
+                if(isFree(nextRow, nextColumn) && reachStamp[next] != reachGeneration && !hasBox(next)){
+                    reachStamp[next] = reachGeneration;
+                    reachFrom[next] = (byte) d;
+                    reachQueue[tail++] = next;
                 }
             }
-        }      
+        }
+        reachSize = tail;
+    }
+
+    /**
+     * Returns the next move on a solution of the current level with the
+     * minimum number of pushes, found within 50 milliseconds, or on a good
+     * push if there was no time to find a solution
+     * 
+     * @return the direction of the next move, null if the level is completed
+     *         or can not be completed from the current state
+     */
+    public Direction hint(){
+        return HintService.shared().hint(this);
     }
 
     /**
@@ -202,43 +660,52 @@ public class SokobanGame {
      * 
      */
     public boolean levelCompleted(){
-        boolean boxesInGoals = false;
-        boolean notSame = false;
-        boolean completed = false;
-        int nrBoxes = 0;
-        for(int i = 0; i < boxes.length; i++){
-            for(int j = 0; j < goals.length; j++){
-                if (Arrays.equals(boxes[i], goals[j])){
-                    nrBoxes++;
-                    if (nrBoxes == goals.length){
-                        boxesInGoals = true;
-                    }
-                }
-            }
-        }
-        for(int i = 0; i < boxes.length - 1; i++){
-            for(int j = i+1; j < boxes.length; j++){
-                if(boxes[i][0] == boxes[j][0] && boxes[i][1] == boxes[j][1]){
-                    notSame = true;
-                }
-            }
+        GameMetrics counted = metrics;
+        long start = counted == null ? 0 : System.nanoTime();
+        boolean completed = isCompleted();
+        if(counted != null){
+            counted.levelCompleted(System.nanoTime() - start);
         }
-        completed = !notSame && boxesInGoals;
         return completed;
     }
 
+    /**
+     * Indicates if the current level is completed, without counting the check
+     * in the metrics
+     * 
+     * @return if the current level is completed or not
+     */
+    private boolean isCompleted(){
+        // boxes never share a cell, so as many boxes on goals as goals means every goal is covered
+        return boxesOnGoals == goals.length && boxes.length == goals.length;
+    }
+
+    /**
+     * Returns the number of boxes that are on a goal position
+     * 
+     * @return the number of boxes on goals
+     */
+    public int boxesOnGoals(){
+        return boxesOnGoals;
+    }
+
+    /**
+     * Indicates if a box was pushed to a dead square or frozen off a goal,
+     * so that the current level can no longer be completed without restarting
+     * 
+     * @return if the current level is lost or not
+     */
+    public boolean isLost(){
+        return lost;
+    }
+
     /**
      * Indicates if the current level is terminated and is the last level
      * 
      * @return if the current level is terminated and is the last level or not
      */
     public boolean isTerminated(){
-        int nrOfLevels = SokobanMapGenerator.numberOfLevels();
-        boolean end = false;
-        if (levelCompleted() && nrOfLevels - getLevel() == 0){
-            end = true;
-        }
-        return end;
+        return level == levels.numberOfLevels() && levelCompleted();
     }
 
     /**
@@ -247,14 +714,11 @@ public class SokobanGame {
      * @requires {@code !isTerminated() && levelCompleted()}
      */
     public void loadNextLevel(){
+        if(metrics != null){
+            metrics.levelLoad();
+        }
         level++;
-        occupiableMap = SokobanMapGenerator.getOccupiableMap(level);
-        rows = SokobanMapGenerator.getNrRows(level);
-        columns = SokobanMapGenerator.getNrColumns(level); 
-        playerPos = SokobanMapGenerator.getPlayer(level);
-        boxes = SokobanMapGenerator.getBoxes(level);
-        goals = SokobanMapGenerator.getGoals(level);
-        map = new SokobanMap(rows, columns, occupiableMap, goals, boxes, playerPos);
+        loadLevel();
         moves = 0;
         direction = Direction.DOWN;
     }
@@ -264,109 +728,62 @@ public class SokobanGame {
      * 
      */
     public void restartLevel(){
+        if(metrics != null){
+            metrics.restart();
+        }
         direction = Direction.DOWN;
         moves = 0;
-        playerPos = SokobanMapGenerator.getPlayer(level);
-        boxes = SokobanMapGenerator.getBoxes(level);
-        map = new SokobanMap(rows, columns, occupiableMap, goals, boxes, playerPos);
-        
+        playerPos = map.getInitialPlayerPosition();
+        boxes = map.getInitialPositionBoxes();
+        initBoxes();
     }
 
     /**
-     * Returns a representation of the current state of the match
+     * Puts the match in the given state, loading the map of the given level,
+     * and clears the history of moves. The level is lost if a box off a goal
+     * is on a dead square or frozen
      * 
+     * @param level the level
+     * @param moves the number of moves done in the level
+     * @param player the position of the player
+     * @param positions the position of each box, in the order of the boxes of the map
+     * @requires {@code 1 <= level && level <= levels.numberOfLevels() && moves >= 0 &&
+     *           the positions are occupiable, distinct and as many as the goals of the level}
      */
-    public String toString(){
-        String resultingMap = "";
-        boolean checkPrints = false;
-        for(int i = 0; i < getRows() * 2 + 3; i++){
-            if(i == 0 || i == getRows() * 2 + 2){
-                resultingMap += "+";
-            }
-            else{
-                resultingMap += "-";
-            } 
-        }
-        resultingMap += "\n LEVEL: " + getLevel() + "\n";
-
-        for(int i = 0; i < getRows() * 2 + 3; i++){
-            if(i == 0 || i == getRows() * 2 + 2){
-                resultingMap += "+";
-            }
-            else if(i == getRows() - 1){
-                resultingMap += " MAP ";
-            }
-            else if(i >= getRows() + 4 && i < getRows() * 3 - 2){
-                resultingMap += "-"; 
-            }
-            else if(i < getRows() - 1){
-                resultingMap += "-"; 
+    void restore(int level, int moves, int[] player, int[][] positions){
+        if(level != this.level){
+            if(metrics != null){
+                metrics.levelLoad();
             }
+            this.level = level;
+            loadLevel();
         }
-        resultingMap += "\n";
-
-        for(int i = 0; i < getRows() ; i++){
-            resultingMap += "| ";
-            for(int j = 0; j < getRows() ; j++){
-                checkPrints = false;
-                if(!isOccupiable(i, j)){
-                    resultingMap += "- " ;
-                }
-                else{
-                    if(getPlayerPosition()[0] == i && getPlayerPosition()[1] == j){
-                        resultingMap += "P ";
-                        checkPrints = true;
-                    }
-                    if(!checkPrints){
-                        for(int k = 0; k < getPositionGoals().length ; k++){
-                            if(getPositionGoals()[k][0] == i && getPositionGoals()[k][1] == j){
-                                for(int l = 0; l < getPositionGoals().length ; l++){
-                                    if(Arrays.equals(getPositionGoals()[k], getPositionBoxes()[l])){
-                                        resultingMap += "* ";
-                                        checkPrints = true;
-                                    }
-                                    if(l == getPositionGoals().length - 1 && !checkPrints){
-                                        resultingMap += "G ";
-                                        checkPrints = true;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    if(!checkPrints){
-                        for(int k = 0; k < getPositionBoxes().length ; k++){
-                            if(getPositionBoxes()[k][0] == i && getPositionBoxes()[k][1] == j){
-                                resultingMap += "B ";
-                                checkPrints = true;
-                            }
-                        }
-                    }
-                    if(!checkPrints){
-                        resultingMap += "  ";
-                        checkPrints = true;
-                    }
-                }
-            }
-            resultingMap += "| \n";
+        this.moves = moves;
+        playerPos = player.clone();
+        boxes = new int[positions.length][];
+        for(int k = 0; k < positions.length; k++){
+            boxes[k] = positions[k].clone();
         }
-        for(int i = 0; i < getRows() * 2 + 3; i++){
-            if(i == 0 || i == getRows() * 2 + 2){
-                resultingMap += "+";
+        initBoxes();
+        for(int k = 0; k < boxes.length && !lost; k++){
+            int row = boxes[k][0];
+            int column = boxes[k][1];
+            if(!isGoal(row * columns + column) && (map.isDeadSquare(row, column) 
+                || map.isFreezeDeadlock(boxCells, freezeScratch, row, column))){
+                lost = true;
+                lostAt = 0;
             }
-            else{
-                resultingMap += "-";
-            } 
         }
-        resultingMap += "\n MOVES: " + getNrMoves() + "\n";
+    }
 
-        for(int i = 0; i < getRows() * 2 + 3; i++){
-            if(i == 0 || i == getRows() * 2 + 2){
-                resultingMap += "+";
-            }
-            else{
-                resultingMap += "-";
-            } 
+    /**
+     * Returns a representation of the current state of the match
+     * 
+     */
+    public String toString(){
+        if(renderer == null){
+            renderer = new SokobanRenderer(this);
         }
-        return resultingMap;
+        return renderer.toString();
     }
-}   
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,5 +1,8 @@
 /**
- * Class that defines an immutable object that represent valid maps in the Game Sokoban
+ * Class that defines an immutable object that represent valid maps in the Game Sokoban.
+ * The walls, goals and dead squares are kept as bitsets of the cells and the goals
+ * and boxes as flat arrays, so that big maps take little memory and are read
+ * without copies through the accessors of single positions
  * 
  * @author fc58208 Maria Rocha
  * @author fc57234 Miguel Henriques
@@ -8,10 +11,20 @@
 public class SokobanMap {
 
   //atributes of this class
-    private final boolean [][] FREE_POSITIONS;
-    private final int [][] OBJECTIVE_POSITIONS;
-    private final  int [][] INICIAL_POSITION_BOX;
+    private final int ROWS;
+    private final int COLUMNS;
+    // row of the k-th goal or box at 2 * k and its column at 2 * k + 1
+    private final int [] OBJECTIVE_POSITIONS;
+    private final int [] INICIAL_POSITION_BOX;
     private final int [] INICIAL_POSITION_PLAYER;
+    // bitsets indexed by row * columns + column, shared with the matches of this map
+    private final long [] FREE_CELLS;
+    private final long [] GOAL_CELLS;
+    private final long [] DEAD_CELLS;
+    private static final int[] STEP_ROW = {-1, 1, 0, 0};
+    private static final int[] STEP_COLUMN = {0, 0, -1, 1};
+    // computed the first time it is asked for, any thread may compute an equal table
+    private volatile PushDistanceTable pushDistances;
   
 
   
@@ -30,68 +43,116 @@ public class SokobanMap {
  */
     public static boolean isValidMap(int rows, int columns, boolean[][] occupiableMap, 
     int[][] goals, int[][] boxes, int[] playerPos){
-       
+      return validate(rows, columns, occupiableMap, goals, boxes, playerPos) == MapValidation.VALID;
+    }
+
+  /**
+ * Vefiries the caractheristics given for the Sokoban map in one pass over each
+ * of them, finding repeated goals and boxes with a bitset of the positions
+ *
+ * @param rows number of rows in the map
+ * @param columns number os columns in the map
+ * @param occupiableMap defines which positions on the map are occupiable (meaning they dont have walls)
+ * @param goals defines the objective positions in the map
+ * @param boxes defines the boxes positions in the map 
+ * @param playerPos indicates the initial position of the player  
+ * @return VALID if the paramaters given create a valid Sokoban Map, otherwise 
+ * the first reason found for them not to
+ */
+    public static MapValidation validate(int rows, int columns, boolean[][] occupiableMap, 
+    int[][] goals, int[][] boxes, int[] playerPos){
       // rows, columns>2  occupiableMap!=null e occupiableMap is a matrix of dimension  rows x columns
-       boolean isValidMap = rows > 2 && columns >2 &&  occupiableMap!=null && occupiableMap.length == rows 
-       && occupiableMap[0].length == columns;
-       // verify if it is matrix 
-       for(int i = 0; i < occupiableMap.length; i++ ){
-        isValidMap &= occupiableMap[0].length == occupiableMap[i].length;
-       }
-       // -------------------------------goals----------------------------
-
-       // goals is vector of valid positions: goals!=null and goals.length>0
-       isValidMap = goals!=null && goals.length>0 ;
-      //  goals is a vector of valid positions
-      for(int j=0 ; j <goals.length; j ++ ){
-        isValidMap = isValidMap &&  goals[j]!=null &&  goals[j].length == 2 && 0 <= goals[j][0] &&  goals[j][0]<rows &&
-        0<=goals[j][1] && goals[j][1]<columns;
-        //all the elements of goals and boxes are occupiable positions according to occupiableMap
-       isValidMap = isValidMap && occupiableMap[goals[j][0]][goals[j][1]];
-       isValidMap = isValidMap && occupiableMap[boxes[j][0]][boxes[j][1]];
-     
+      if(rows <= 2 || columns <= 2){
+        return MapValidation.INVALID_SIZE;
+      }
+      if(occupiableMap == null || occupiableMap.length != rows){
+        return MapValidation.INVALID_OCCUPIABLE_MAP;
+      }
+      for(int i = 0; i < rows; i++){
+        if(occupiableMap[i] == null || occupiableMap[i].length != columns){
+          return MapValidation.INVALID_OCCUPIABLE_MAP;
+        }
+      }
+      // -------------------------------goals----------------------------
+      if(goals == null || goals.length == 0){
+        return MapValidation.NO_GOALS;
+      }
+      long[] goalCells = new long[(rows * columns + 63) >>> 6];
+      for(int j = 0; j < goals.length; j++){
+        if(!isPosition(goals[j], rows, columns)){
+          return MapValidation.INVALID_GOAL;
+        }
+        if(!occupiableMap[goals[j][0]][goals[j][1]]){
+          return MapValidation.GOAL_NOT_OCCUPIABLE;
+        }
         // goals doesnt have repeated elements
-        for(int k=0; k < goals.length; k++ ){
-            if (j !=k){   
-           isValidMap = isValidMap && goals[j][0] != goals[k][0] || goals[j][1] != goals[k][1];
-            }
-          }
+        if(!addCell(goalCells, goals[j][0] * columns + goals[j][1])){
+          return MapValidation.REPEATED_GOAL;
+        }
       }
-       
       //----------------------------boxes----------------------------------------
-
-      // boxes is a vector of valid positions
-      isValidMap = isValidMap && boxes!=null && boxes.length>0;
-      //  boxes is a vector of valid positions
-      for(int l=0 ; l < boxes.length; l ++ ){
-        isValidMap = isValidMap && boxes[l]!=null &&  boxes[l].length == 2 && 0<= boxes[l][0] &&  boxes[l][0]<rows &&
-        0<=boxes[l][1] && boxes[l][1]<columns;
-         //playerPos is not contained in the vector boxes 
-       isValidMap = isValidMap && (boxes[l][0]!= playerPos[0] || boxes[l][1]!= playerPos[1]);
+      if(boxes == null || boxes.length == 0){
+        return MapValidation.NO_BOXES;
+      }
+      long[] boxCells = new long[goalCells.length];
+      for(int l = 0; l < boxes.length; l++){
+        if(!isPosition(boxes[l], rows, columns)){
+          return MapValidation.INVALID_BOX;
+        }
+        if(!occupiableMap[boxes[l][0]][boxes[l][1]]){
+          return MapValidation.BOX_NOT_OCCUPIABLE;
+        }
         // boxes doesnt have repeated elements
-        for(int m=0; m < boxes.length; m++ ){
-            if (l !=m){
-           isValidMap = isValidMap && (boxes[l][0] != boxes[m][0] || boxes[l][1] != boxes[m][1]);
-           
-            }
-          }
+        if(!addCell(boxCells, boxes[l][0] * columns + boxes[l][1])){
+          return MapValidation.REPEATED_BOX;
+        }
       }
-         
-      //tests if the position given by playerPos represents an occupiable position in occupiableMap
-      isValidMap = isValidMap && playerPos[0] >= 0 && playerPos[0] < occupiableMap.length && playerPos[1] >= 0 && playerPos[1] < occupiableMap[0].length&&
-      occupiableMap[ playerPos[0]][ playerPos[1]];
-     
-
-
-
-        //goals.length == boxes.length  
-
-        return isValidMap && goals.length == boxes.length ;
-
-
+      //----------------------------player----------------------------------------
+      if(!isPosition(playerPos, rows, columns)){
+        return MapValidation.INVALID_PLAYER;
+      }
+      if(!occupiableMap[playerPos[0]][playerPos[1]]){
+        return MapValidation.PLAYER_NOT_OCCUPIABLE;
+      }
+      //playerPos is not contained in the vector boxes 
+      if(!addCell(boxCells, playerPos[0] * columns + playerPos[1])){
+        return MapValidation.PLAYER_ON_BOX;
+      }
+      //goals.length == boxes.length  
+      if(goals.length != boxes.length){
+        return MapValidation.DIFFERENT_NUMBER_OF_GOALS_AND_BOXES;
+      }
+      return MapValidation.VALID;
+    }
 
+  /**
+ * Checks if the given vector is a position inside a map with the given size
+ *
+ * @param position the vector
+ * @param rows number of rows in the map
+ * @param columns number os columns in the map
+ * @return position is not null, has 2 coordinates and is inside the map
+ */
+    private static boolean isPosition(int[] position, int rows, int columns){
+      return position != null && position.length == 2 && 0 <= position[0] && position[0] < rows
+      && 0 <= position[1] && position[1] < columns;
+    }
 
-}
+  /**
+ * Adds a cell to a bitset of cells
+ *
+ * @param cells the bitset
+ * @param cell the cell
+ * @return the cell was not in the bitset
+ */
+    private static boolean addCell(long[] cells, int cell){
+      long bit = 1L << cell;
+      if((cells[cell >>> 6] & bit) != 0){
+        return false;
+      }
+      cells[cell >>> 6] |= bit;
+      return true;
+    }
 
 
 
@@ -112,27 +173,137 @@ public class SokobanMap {
     public SokobanMap(int rows, int columns, boolean[][] occupiableMap, int[][] goals,
     // creates atributes with the sizes given by the player
     int[][] boxes, int[] playerPos){
-      this.FREE_POSITIONS = new boolean[rows][columns];
-      this.OBJECTIVE_POSITIONS = new int [goals.length][2];
-      this.INICIAL_POSITION_BOX= new int [boxes.length][2];
+      this.ROWS = rows;
+      this.COLUMNS = columns;
+      this.OBJECTIVE_POSITIONS = new int [2 * goals.length];
+      this.INICIAL_POSITION_BOX= new int [2 * boxes.length];
       this.INICIAL_POSITION_PLAYER = new int [2];
-    // creates the atribute - FREE_POSITIONS
-      for(int i=0;i<this.FREE_POSITIONS.length;i++){
-        for(int j=0;j<this.FREE_POSITIONS[0].length;j++){
-         this.FREE_POSITIONS[i][j] = occupiableMap[i][j];
-        }
-      }
-      // creates the atribute - OBJECTIVE_POSITIONS
-        for(int k=0; k<OBJECTIVE_POSITIONS.length;k++){
-          for(int l=0;l<OBJECTIVE_POSITIONS[0].length;l++){
-          this.OBJECTIVE_POSITIONS[k][l]=goals[k][l];
-          this.INICIAL_POSITION_BOX[k][l]=boxes[k][l];
+      // creates the atributes - OBJECTIVE_POSITIONS and INICIAL_POSITION_BOX
+        for(int k=0; k<goals.length;k++){
+          for(int l=0;l<2;l++){
+          this.OBJECTIVE_POSITIONS[2 * k + l]=goals[k][l];
+          this.INICIAL_POSITION_BOX[2 * k + l]=boxes[k][l];
           }
         }
          // creates the atribute - INICIAL_POSITION_PLAYER
          this.INICIAL_POSITION_PLAYER[0] =playerPos[0]; 
          this.INICIAL_POSITION_PLAYER[1] =playerPos[1]; 
-      
+         // creates the atributes - FREE_CELLS and GOAL_CELLS
+         this.FREE_CELLS = new long[(rows * columns + 63) >>> 6];
+         this.GOAL_CELLS = new long[this.FREE_CELLS.length];
+         for(int i = 0; i < rows; i++){
+           for(int j = 0; j < columns; j++){
+             if(occupiableMap[i][j]){
+               int cell = i * columns + j;
+               this.FREE_CELLS[cell >>> 6] |= 1L << cell;
+             }
+           }
+         }
+         for(int k = 0; k < goals.length; k++){
+           int cell = goals[k][0] * columns + goals[k][1];
+           this.GOAL_CELLS[cell >>> 6] |= 1L << cell;
+         }
+         // creates the atribute - DEAD_CELLS
+         this.DEAD_CELLS = deadCells();
+    }
+
+  /**
+  * Returns the bitset of the occupiable positions, indexed by row * getColumns() + column,
+  * without copying it, so it must not be modified
+  *
+  * @return the bitset of the occupiable positions
+  */
+    long[] freeCells(){
+      return this.FREE_CELLS;
+    }
+
+  /**
+  * Returns the bitset of the goals, indexed by row * getColumns() + column,
+  * without copying it, so it must not be modified
+  *
+  * @return the bitset of the goals
+  */
+    long[] goalCells(){
+      return this.GOAL_CELLS;
+    }
+
+  /**
+  * Returns the push distances from every position to every goal, computed
+  * the first time they are asked for and shared by every user of this map
+  *
+  * @return the push distances of this map
+  */
+    public PushDistanceTable getPushDistances(){
+      PushDistanceTable table = this.pushDistances;
+      if(table == null){
+        table = new PushDistanceTable(this);
+        this.pushDistances = table;
+      }
+      return table;
+    }
+
+  /**
+  * Finds the dead squares by pulling a box away from every goal, a free cell
+  * that no pull reaches can never take a box to a goal
+  *
+  * @return bitset of the dead squares, indexed by row * columns + column
+  */
+    private long[] deadCells(){
+      int columns = getColumns();
+      long[] live = new long[this.FREE_CELLS.length];
+      int free = 0;
+      for(long word : this.FREE_CELLS){
+        free += Long.bitCount(word);
+      }
+      // only occupiable cells are ever queued, each of them once
+      int[] queue = new int[free];
+      int tail = 0;
+      for(int k = 0; k < getNrBoxes(); k++){
+        int cell = getGoalRow(k) * columns + getGoalColumn(k);
+        if(addCell(live, cell)){
+          queue[tail++] = cell;
+        }
+      }
+      for(int head = 0; head < tail; head++){
+        int row = queue[head] / columns;
+        int column = queue[head] % columns;
+        for(int d = 0; d < 4; d++){
+          // the box moves one cell and the player, pulling it, one cell further
+          int boxRow = row + STEP_ROW[d];
+          int boxColumn = column + STEP_COLUMN[d];
+          if(isFree(boxRow, boxColumn) && isFree(boxRow + STEP_ROW[d], boxColumn + STEP_COLUMN[d])
+          && addCell(live, boxRow * columns + boxColumn)){
+            queue[tail++] = boxRow * columns + boxColumn;
+          }
+        }
+      }
+      long[] dead = new long[live.length];
+      for(int w = 0; w < dead.length; w++){
+        dead[w] = this.FREE_CELLS[w] & ~live[w];
+      }
+      return dead;
+    }
+
+  /**
+  * Checks if the position is inside the map
+  *
+  * @param row row of the position
+  * @param column column of the position
+  * @return the position is inside the map
+  */
+    private boolean isInside(int row, int column){
+      return row >= 0 && row < getRows() && column >= 0 && column < getColumns();
+    }
+
+  /**
+  * Checks if the position is inside the map and occupiable
+  *
+  * @param row row of the position
+  * @param column column of the position
+  * @return the position is inside the map and occupiable
+  */
+    private boolean isFree(int row, int column){
+      return isInside(row, column) && isOccupiable(row, column);
     }
 
  /**
@@ -142,8 +313,7 @@ public class SokobanMap {
  */
 
     public int getRows(){
-       int rows = this.FREE_POSITIONS.length;
-      return rows;
+      return this.ROWS;
     }
 
 
@@ -154,8 +324,7 @@ public class SokobanMap {
   */
   
     public int getColumns(){
-      int columns = this.FREE_POSITIONS[0].length;
-      return columns;
+      return this.COLUMNS;
     }
 
   /**
@@ -165,7 +334,7 @@ public class SokobanMap {
   */
   
     public int getNrBoxes(){
-      int boxes = this.INICIAL_POSITION_BOX.length;
+      int boxes = this.INICIAL_POSITION_BOX.length / 2;
       return boxes;
     }
   
@@ -189,10 +358,10 @@ public class SokobanMap {
   * @return initial position of the player 
   */
     public int[][] getInitialPositionBoxes(){
-      int [][] positionBoxes= new int[this.INICIAL_POSITION_BOX.length][2];
-      for(int i=0;i<this.INICIAL_POSITION_BOX.length;i++){
+      int [][] positionBoxes= new int[getNrBoxes()][2];
+      for(int i=0;i<positionBoxes.length;i++){
         for(int j=0;j<2;j++){
-         positionBoxes[i][j]= this.INICIAL_POSITION_BOX[i][j];
+         positionBoxes[i][j]= this.INICIAL_POSITION_BOX[2 * i + j];
         }
       }
       return positionBoxes;
@@ -204,14 +373,76 @@ public class SokobanMap {
   * @return initial position of the objectives
   */
     public int[][]getInitialPositionGoals(){
-      int [][] positionGoals= new int[this.OBJECTIVE_POSITIONS.length][2];
-      for(int i=0;i<this.OBJECTIVE_POSITIONS.length;i++){
-        for(int j=0;j<this.OBJECTIVE_POSITIONS[0].length;j++){
-         positionGoals[i][j]= this.OBJECTIVE_POSITIONS[i][j];
+      int [][] positionGoals= new int[getNrBoxes()][2];
+      for(int i=0;i<positionGoals.length;i++){
+        for(int j=0;j<2;j++){
+         positionGoals[i][j]= this.OBJECTIVE_POSITIONS[2 * i + j];
         }
       }
       return positionGoals;
     }
+
+  /**
+  * Indicates the row of the initial position of the player, without copying
+  *
+  * @return row of the initial position of the player
+  */
+    public int getInitialPlayerRow(){
+      return this.INICIAL_POSITION_PLAYER[0];
+    }
+
+  /**
+  * Indicates the column of the initial position of the player, without copying
+  *
+  * @return column of the initial position of the player
+  */
+    public int getInitialPlayerColumn(){
+      return this.INICIAL_POSITION_PLAYER[1];
+    }
+
+  /**
+  * Indicates the row of the initial position of a box, without copying
+  *
+  * @param box index of the box, in the order of getInitialPositionBoxes()
+  * @requires {@code 0 <= box && box < getNrBoxes()}
+  * @return row of the initial position of the box
+  */
+    public int getInitialBoxRow(int box){
+      return this.INICIAL_POSITION_BOX[2 * box];
+    }
+
+  /**
+  * Indicates the column of the initial position of a box, without copying
+  *
+  * @param box index of the box, in the order of getInitialPositionBoxes()
+  * @requires {@code 0 <= box && box < getNrBoxes()}
+  * @return column of the initial position of the box
+  */
+    public int getInitialBoxColumn(int box){
+      return this.INICIAL_POSITION_BOX[2 * box + 1];
+    }
+
+  /**
+  * Indicates the row of an objective, without copying
+  *
+  * @param goal index of the objective, in the order of getInitialPositionGoals()
+  * @requires {@code 0 <= goal && goal < getNrBoxes()}
+  * @return row of the objective
+  */
+    public int getGoalRow(int goal){
+      return this.OBJECTIVE_POSITIONS[2 * goal];
+    }
+
+  /**
+  * Indicates the column of an objective, without copying
+  *
+  * @param goal index of the objective, in the order of getInitialPositionGoals()
+  * @requires {@code 0 <= goal && goal < getNrBoxes()}
+  * @return column of the objective
+  */
+    public int getGoalColumn(int goal){
+      return this.OBJECTIVE_POSITIONS[2 * goal + 1];
+    }
  /**
   * Checks if the position indicated by the parameters is occupiable 
   *
@@ -221,10 +452,199 @@ public class SokobanMap {
   */
 
     public boolean isOccupiable(int row, int column){
-      
-      boolean occupiable = this.FREE_POSITIONS[row][column];
+      int cell = row * getColumns() + column;
+      boolean occupiable = (this.FREE_CELLS[cell >>> 6] & (1L << cell)) != 0;
       
       return occupiable;
     }
   
+    /**
+  * Checks if the position indicated by the parameters is a dead square, an
+  * occupiable position from which a box can never be pushed to any goal
+  *
+  * @param row row of the position to check in SokobanMap
+  * @param column column of the position to check in SokobanMap
+  * @requires {@code 0 <= row && row < getRows() && 0 <= column && column < getColumns()}
+  * @return the position is a dead square
+  */
+    public boolean isDeadSquare(int row, int column){
+      int cell = row * getColumns() + column;
+      return (this.DEAD_CELLS[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+  /**
+  * Checks if the box on the given position is frozen off a goal, or froze a
+  * neighbouring box off a goal, so that the level can no longer be completed.
+  * A box is frozen when it can be pushed neither vertically nor horizontally,
+  * because of walls, dead squares on both sides or other frozen boxes
+  *
+  * @param boxes bitset of the cells with boxes, indexed by row * getColumns() + column
+  * @param row row of the box
+  * @param column column of the box
+  * @requires {@code boxes has the bit of (row, column) set}
+  * @return the level can no longer be completed
+  */
+    public boolean isFreezeDeadlock(long[] boxes, int row, int column){
+      // the boxes being checked are only needed when there is a neighbouring box
+      long[] checking = touchesBox(boxes, row, column) ? new long[boxes.length] : null;
+      return freezeDeadlock(boxes, checking, row, column);
+    }
+
+  /**
+  * Checks, like isFreezeDeadlock(boxes, row, column), if the box on the given
+  * position causes a freeze deadlock, using the given bitset to mark the boxes
+  * being checked instead of allocating one
+  *
+  * @param boxes bitset of the cells with boxes, indexed by row * getColumns() + column
+  * @param scratch bitset of the same length as boxes with no bit set, left with no bit set
+  * @param row row of the box
+  * @param column column of the box
+  * @requires {@code boxes has the bit of (row, column) set && scratch.length == boxes.length}
+  * @return the level can no longer be completed
+  */
+    public boolean isFreezeDeadlock(long[] boxes, long[] scratch, int row, int column){
+      return freezeDeadlock(boxes, touchesBox(boxes, row, column) ? scratch : null, row, column);
+    }
+
+  /**
+  * Checks if there is a box next to the given position
+  *
+  * @param boxes bitset of the cells with boxes
+  * @param row row of the position
+  * @param column column of the position
+  * @return some neighbour of the position holds a box
+  */
+    private boolean touchesBox(long[] boxes, int row, int column){
+      for(int d = 0; d < 4; d++){
+        if(hasBox(boxes, row + STEP_ROW[d], column + STEP_COLUMN[d])){
+          return true;
+        }
+      }
+      return false;
+    }
+
+  /**
+  * Checks if the box on the given position causes a freeze deadlock
+  *
+  * @param boxes bitset of the cells with boxes
+  * @param checking bitset of the boxes being checked, null if there is no neighbouring box
+  * @param row row of the box
+  * @param column column of the box
+  * @return the level can no longer be completed
+  */
+    private boolean freezeDeadlock(long[] boxes, long[] checking, int row, int column){
+      boolean touchesBox = checking != null;
+      if(!isFrozen(boxes, checking, row, column)){
+        return false;
+      }
+      if(!isGoal(row, column)){
+        return true;
+      }
+      for(int d = 0; touchesBox && d < 4; d++){
+        int nextRow = row + STEP_ROW[d];
+        int nextColumn = column + STEP_COLUMN[d];
+        if(hasBox(boxes, nextRow, nextColumn) && !isGoal(nextRow, nextColumn)
+        && isFrozen(boxes, checking, nextRow, nextColumn)){
+          return true;
+        }
+      }
+      return false;
+    }
+
+  /**
+  * Checks if a box can be pushed neither vertically nor horizontally, boxes
+  * still being checked count as walls
+  *
+  * @param boxes bitset of the cells with boxes
+  * @param checking bitset of the boxes being checked, null if there is no neighbouring box
+  * @param row row of the box
+  * @param column column of the box
+  * @return the box is frozen
+  */
+    private boolean isFrozen(long[] boxes, long[] checking, int row, int column){
+      int cell = row * getColumns() + column;
+      if(checking != null){
+        checking[cell >>> 6] |= 1L << cell;
+      }
+      boolean frozen = isBlocked(boxes, checking, row, column, 0) 
+      && isBlocked(boxes, checking, row, column, 2);
+      if(checking != null){
+        checking[cell >>> 6] &= ~(1L << cell);
+      }
+      return frozen;
+    }
+
+  /**
+  * Checks if a box can not be pushed along one axis
+  *
+  * @param boxes bitset of the cells with boxes
+  * @param checking bitset of the boxes being checked, null if there is no neighbouring box
+  * @param row row of the box
+  * @param column column of the box
+  * @param axis 0 for the vertical axis and 2 for the horizontal axis
+  * @return the box can not be pushed along the axis
+  */
+    private boolean isBlocked(long[] boxes, long[] checking, int row, int column, int axis){
+      int beforeRow = row + STEP_ROW[axis];
+      int beforeColumn = column + STEP_COLUMN[axis];
+      int afterRow = row + STEP_ROW[axis + 1];
+      int afterColumn = column + STEP_COLUMN[axis + 1];
+      if(!isFree(beforeRow, beforeColumn) || !isFree(afterRow, afterColumn)){
+        return true;
+      }
+      if(isDeadSquare(beforeRow, beforeColumn) && isDeadSquare(afterRow, afterColumn)){
+        return true;
+      }
+      if(checking == null){
+        return false;
+      }
+      return isFrozenNeighbour(boxes, checking, beforeRow, beforeColumn)
+      || isFrozenNeighbour(boxes, checking, afterRow, afterColumn);
+    }
+
+  /**
+  * Checks if the given position holds a box that is being checked or is frozen
+  *
+  * @param boxes bitset of the cells with boxes
+  * @param checking bitset of the boxes being checked
+  * @param row row of the position
+  * @param column column of the position
+  * @return the position holds a box that blocks its neighbours
+  */
+    private boolean isFrozenNeighbour(long[] boxes, long[] checking, int row, int column){
+      int cell = row * getColumns() + column;
+      if((checking[cell >>> 6] & (1L << cell)) != 0){
+        return true;
+      }
+      return hasBox(boxes, row, column) && isFrozen(boxes, checking, row, column);
+    }
+
+  /**
+  * Checks if there is a box on the given position
+  *
+  * @param boxes bitset of the cells with boxes
+  * @param row row of the position
+  * @param column column of the position
+  * @return the position is inside the map and holds a box
+  */
+    private boolean hasBox(long[] boxes, int row, int column){
+      if(!isInside(row, column)){
+        return false;
+      }
+      int cell = row * getColumns() + column;
+      return (boxes[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+  /**
+  * Checks if the given position is a goal
+  *
+  * @param row row of the position
+  * @param column column of the position
+  * @return the position is a goal
+  */
+    private boolean isGoal(int row, int column){
+      int cell = row * getColumns() + column;
+      return (this.GOAL_CELLS[cell >>> 6] & (1L << cell)) != 0;
+    }
+  
   }
\ No newline at end of file
@@ -0,0 +1,222 @@
+/**
+ * This class SokobanPainter draws a match on a Swing component. The walls,
+ * the goals and the background of the level are drawn once per level into an
+ * image, and the sprites are converted once to images compatible with the
+ * screen. After each move, update asks the component to repaint only the
+ * cells where the player or a box changed, and paint draws the boxes and the
+ * player only on the cells inside the area being repainted, so the cost of a
+ * move does not depend on the size of the map.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+public class SokobanPainter {
+
+    // size in pixels of a cell, the size of the sprites
+    public static final int CELL_SIZE = 50;
+    private static final Color BACKGROUND = new Color(194, 194, 194);
+
+    private final SokobanGame game;
+    private final BufferedImage crate;
+    private final BufferedImage crateGoal;
+    private final BufferedImage goal;
+    private final BufferedImage wall;
+    // player sprites indexed by the ordinal of the direction of the last move
+    private final BufferedImage[] player = new BufferedImage[4];
+    private BufferedImage staticLayer;
+    private int level = -1;
+    private int rows;
+    private int columns;
+    private boolean[] goalAt;
+    private int playerCell = -1;
+    private Direction playerDirection;
+    private int[] boxes;
+    private boolean[] boxAt;
+
+    /**
+     * Creates a painter of the given match with the sprites of the given
+     * resources directory
+     *
+     * @param game the match
+     * @param resources the directory with the sprites of the game
+     * @throws IOException if a sprite can not be read
+     * @requires {@code game != null && resources != null}
+     */
+    public SokobanPainter(SokobanGame game, File resources) throws IOException{
+        this.game = game;
+        crate = sprite(resources, "crate_new.png");
+        crateGoal = sprite(resources, "crate_goal_new.png");
+        goal = sprite(resources, "goals.png");
+        wall = sprite(resources, "wall_new.png");
+        player[Direction.UP.ordinal()] = sprite(resources, "player3B.png");
+        player[Direction.DOWN.ordinal()] = sprite(resources, "player3.png");
+        player[Direction.LEFT.ordinal()] = sprite(resources, "player3L.png");
+        player[Direction.RIGHT.ordinal()] = sprite(resources, "player3R.png");
+    }
+
+    /**
+     * Asks the given component to repaint the cells that changed since the
+     * last update, or the whole map if the level changed
+     *
+     * @param target the component where the match is painted
+     * @requires {@code target != null}
+     */
+    public void update(Component target){
+        if(game.getLevel() != level || game.getRows() != rows || game.getColumns() != columns){
+            layout();
+            target.repaint(0, 0, columns * CELL_SIZE, rows * CELL_SIZE);
+            return;
+        }
+        int[] playerPos = game.getPlayerPosition();
+        int newPlayer = playerPos[0] * columns + playerPos[1];
+        if(newPlayer != playerCell || game.getDirection() != playerDirection){
+            repaint(target, playerCell);
+            repaint(target, newPlayer);
+            playerCell = newPlayer;
+            playerDirection = game.getDirection();
+        }
+        int[][] positions = game.getPositionBoxes();
+        // clears every old cell before setting the new ones, boxes may take each other's cells
+        for(int k = 0; k < positions.length; k++){
+            int cell = positions[k][0] * columns + positions[k][1];
+            if(cell != boxes[k]){
+                repaint(target, boxes[k]);
+                boxAt[boxes[k]] = false;
+            }
+        }
+        for(int k = 0; k < positions.length; k++){
+            int cell = positions[k][0] * columns + positions[k][1];
+            if(cell != boxes[k]){
+                repaint(target, cell);
+                boxAt[cell] = true;
+                boxes[k] = cell;
+            }
+        }
+    }
+
+    /**
+     * Paints the part of the match inside the clip of the given graphics
+     *
+     * @param g the graphics of the component
+     * @requires {@code g != null}
+     */
+    public void paint(Graphics g){
+        if(game.getLevel() != level || game.getRows() != rows || game.getColumns() != columns){
+            layout();
+        }
+        Rectangle clip = g.getClipBounds();
+        if(clip == null){
+            clip = new Rectangle(0, 0, columns * CELL_SIZE, rows * CELL_SIZE);
+        }
+        g.drawImage(staticLayer, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height,
+            clip.x, clip.y, clip.x + clip.width, clip.y + clip.height, null);
+        int firstRow = Math.max(0, clip.y / CELL_SIZE);
+        int lastRow = Math.min(rows - 1, (clip.y + clip.height - 1) / CELL_SIZE);
+        int firstColumn = Math.max(0, clip.x / CELL_SIZE);
+        int lastColumn = Math.min(columns - 1, (clip.x + clip.width - 1) / CELL_SIZE);
+        for(int i = firstRow; i <= lastRow; i++){
+            for(int j = firstColumn; j <= lastColumn; j++){
+                int cell = i * columns + j;
+                if(boxAt[cell]){
+                    g.drawImage(goalAt[cell] ? crateGoal : crate, j * CELL_SIZE, i * CELL_SIZE, null);
+                }
+                else if(cell == playerCell){
+                    g.drawImage(player[playerDirection.ordinal()], j * CELL_SIZE, i * CELL_SIZE, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the static layer of the current level and takes the current
+     * positions of the player and of the boxes
+     */
+    private void layout(){
+        level = game.getLevel();
+        rows = game.getRows();
+        columns = game.getColumns();
+        staticLayer = compatible(columns * CELL_SIZE, rows * CELL_SIZE, Transparency.OPAQUE);
+        Graphics2D g = staticLayer.createGraphics();
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, columns * CELL_SIZE, rows * CELL_SIZE);
+        for(int i = 0; i < rows; i++){
+            for(int j = 0; j < columns; j++){
+                if(!game.isOccupiable(i, j)){
+                    g.drawImage(wall, j * CELL_SIZE, i * CELL_SIZE, null);
+                }
+            }
+        }
+        goalAt = new boolean[rows * columns];
+        int[][] goals = game.getPositionGoals();
+        for(int k = 0; k < goals.length; k++){
+            goalAt[goals[k][0] * columns + goals[k][1]] = true;
+            g.drawImage(goal, goals[k][1] * CELL_SIZE, goals[k][0] * CELL_SIZE, null);
+        }
+        g.dispose();
+        int[] playerPos = game.getPlayerPosition();
+        playerCell = playerPos[0] * columns + playerPos[1];
+        playerDirection = game.getDirection();
+        int[][] positions = game.getPositionBoxes();
+        boxes = new int[positions.length];
+        boxAt = new boolean[rows * columns];
+        for(int k = 0; k < positions.length; k++){
+            boxes[k] = positions[k][0] * columns + positions[k][1];
+            boxAt[boxes[k]] = true;
+        }
+    }
+
+    /**
+     * Asks the given component to repaint the given cell
+     *
+     * @param cell the cell, ignored if negative
+     */
+    private void repaint(Component target, int cell){
+        if(cell >= 0){
+            target.repaint((cell % columns) * CELL_SIZE, (cell / columns) * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+        }
+    }
+
+    /**
+     * Reads a sprite and converts it to an image compatible with the screen
+     *
+     * @return the converted sprite
+     */
+    private static BufferedImage sprite(File resources, String name) throws IOException{
+        BufferedImage read = ImageIO.read(new File(resources, name));
+        if(read == null){
+            throw new IOException("not an image: " + name);
+        }
+        BufferedImage sprite = compatible(read.getWidth(), read.getHeight(), Transparency.TRANSLUCENT);
+        Graphics2D g = sprite.createGraphics();
+        g.drawImage(read, 0, 0, null);
+        g.dispose();
+        return sprite;
+    }
+
+    /**
+     * Creates an image in the format of the screen, which is drawn without
+     * conversions, or in a default format if there is no screen
+     *
+     * @return the new image
+     */
+    private static BufferedImage compatible(int width, int height, int transparency){
+        if(GraphicsEnvironment.isHeadless()){
+            return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+            .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * This class SokobanRenderer draws the text representation of a match into a
+ * reusable buffer of characters. The walls and goals of the level are kept in
+ * a grid of cell types built once per level, the boxes in a grid of flags,
+ * and each update only redraws the rows where the player or a box moved
+ * since the previous update.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+import java.util.Arrays;
+
+public class SokobanRenderer {
+
+    private static final byte WALL = 0;
+    private static final byte FLOOR = 1;
+    private static final byte GOAL = 2;
+    private static final String LEVEL_LABEL = " LEVEL: ";
+    private static final String MOVES_LABEL = " MOVES: ";
+    private static final String MAP_LABEL = " MAP ";
+
+    private final SokobanGame game;
+    private int level = -1;
+    private int rows;
+    private int columns;
+    private byte[] cellTypes;
+    private char[] frame = new char[0];
+    // positions in frame of the first map row, of the border after the map,
+    // of the line with the moves and of the end of the frame
+    private int mapStart;
+    private int tailStart;
+    private int movesStart;
+    private int length;
+    private int player = -1;
+    private int[] boxes;
+    private boolean[] boxAt;
+    private int moves = -1;
+    private boolean[] dirtyRows;
+    private boolean movesDirty;
+
+    /**
+     * Creates a renderer of the given match
+     *
+     * @param game the match
+     * @requires {@code game != null}
+     */
+    public SokobanRenderer(SokobanGame game){
+        this.game = game;
+    }
+
+    /**
+     * Brings the frame up to date with the match, redrawing only what changed
+     */
+    public void update(){
+        if(game.getLevel() != level || game.getRows() != rows || game.getColumns() != columns){
+            layout();
+        }
+        int[] playerPos = game.getPlayerPosition();
+        int newPlayer = playerPos[0] * columns + playerPos[1];
+        if(newPlayer != player){
+            markRow(player);
+            markRow(newPlayer);
+            player = newPlayer;
+        }
+        int[][] positions = game.getPositionBoxes();
+        // clears every old cell before setting the new ones, boxes may take each other's cells
+        for(int k = 0; k < positions.length; k++){
+            int cell = positions[k][0] * columns + positions[k][1];
+            if(cell != boxes[k] && boxes[k] >= 0){
+                markRow(boxes[k]);
+                boxAt[boxes[k]] = false;
+            }
+        }
+        for(int k = 0; k < positions.length; k++){
+            int cell = positions[k][0] * columns + positions[k][1];
+            if(cell != boxes[k]){
+                markRow(cell);
+                boxAt[cell] = true;
+                boxes[k] = cell;
+            }
+        }
+        for(int i = 0; i < rows; i++){
+            if(dirtyRows[i]){
+                drawRow(i);
+            }
+        }
+        if(game.getNrMoves() != moves){
+            moves = game.getNrMoves();
+            drawTail();
+            movesDirty = true;
+        }
+    }
+
+    /**
+     * Writes the whole frame
+     *
+     * @param out where the frame is written
+     * @throws IOException if out can not be written
+     */
+    public void render(Appendable out) throws IOException{
+        update();
+        for(int i = 0; i < length; i++){
+            out.append(frame[i]);
+        }
+        Arrays.fill(dirtyRows, false);
+        movesDirty = false;
+    }
+
+    /**
+     * Writes only the rows that changed since the last frame written, each one
+     * preceded by the ANSI escape that moves the cursor to its line, assuming
+     * the last frame was written from the top left corner of the terminal
+     *
+     * @param out where the rows are written
+     * @return the number of lines written
+     * @throws IOException if out can not be written
+     */
+    public int renderChanges(Appendable out) throws IOException{
+        update();
+        int written = 0;
+        int lineLength = columns * 2 + 4;
+        for(int i = 0; i < rows; i++){
+            if(dirtyRows[i]){
+                // the header takes the first three lines
+                writeLine(out, i + 4, mapStart + i * (lineLength + 1), lineLength);
+                dirtyRows[i] = false;
+                written++;
+            }
+        }
+        if(movesDirty){
+            int end = movesStart;
+            while(frame[end] != '\n'){
+                end++;
+            }
+            // the border after the map comes before the moves, the line is cleared as it may shrink
+            out.append("\u001b[").append(Integer.toString(rows + 5)).append(";1H\u001b[2K");
+            for(int i = movesStart; i < end; i++){
+                out.append(frame[i]);
+            }
+            movesDirty = false;
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * Returns the current frame
+     *
+     * @return the current frame
+     */
+    public String toString(){
+        update();
+        return new String(frame, 0, length);
+    }
+
+    /**
+     * Writes one line of the frame after moving the cursor to it
+     */
+    private void writeLine(Appendable out, int line, int start, int lineLength) throws IOException{
+        out.append("\u001b[").append(Integer.toString(line)).append(";1H");
+        for(int i = start; i < start + lineLength; i++){
+            out.append(frame[i]);
+        }
+    }
+
+    /**
+     * Builds the cell types and the frame of the current level
+     */
+    private void layout(){
+        level = game.getLevel();
+        rows = game.getRows();
+        columns = game.getColumns();
+        cellTypes = new byte[rows * columns];
+        for(int i = 0; i < rows; i++){
+            for(int j = 0; j < columns; j++){
+                cellTypes[i * columns + j] = game.isOccupiable(i, j) ? FLOOR : WALL;
+            }
+        }
+        int[][] goals = game.getPositionGoals();
+        for(int k = 0; k < goals.length; k++){
+            cellTypes[goals[k][0] * columns + goals[k][1]] = GOAL;
+        }
+        boxes = new int[game.getPositionBoxes().length];
+        Arrays.fill(boxes, -1);
+        boxAt = new boolean[rows * columns];
+        player = -1;
+        moves = -1;
+        dirtyRows = new boolean[rows];
+        Arrays.fill(dirtyRows, true);
+
+        int width = columns * 2 + 3;
+        int lineLength = columns * 2 + 4;
+        // borders, labels with up to 11 digits and the map rows
+        int capacity = 4 * (width + 1) + LEVEL_LABEL.length() + MOVES_LABEL.length() + 24
+            + rows * (lineLength + 1);
+        if(frame.length < capacity){
+            frame = new char[capacity];
+        }
+        int at = border(0, width);
+        at = write(at, LEVEL_LABEL);
+        at = number(at, level);
+        frame[at++] = '\n';
+        int left = (width - 2 - MAP_LABEL.length()) / 2;
+        int right = width - 2 - MAP_LABEL.length() - left;
+        frame[at++] = '+';
+        Arrays.fill(frame, at, at + left, '-');
+        at = write(at + left, MAP_LABEL);
+        Arrays.fill(frame, at, at + right, '-');
+        at += right;
+        frame[at++] = '+';
+        frame[at++] = '\n';
+        mapStart = at;
+        for(int i = 0; i < rows; i++){
+            frame[at] = '|';
+            frame[at + 1] = ' ';
+            at += lineLength;
+            frame[at - 2] = '|';
+            frame[at - 1] = ' ';
+            frame[at++] = '\n';
+        }
+        tailStart = at;
+    }
+
+    /**
+     * Redraws one map row of the frame
+     *
+     * @param i the row
+     */
+    private void drawRow(int i){
+        int at = mapStart + i * (columns * 2 + 5) + 2;
+        for(int j = 0; j < columns; j++){
+            int cell = i * columns + j;
+            char c = ' ';
+            if(cellTypes[cell] == WALL){
+                c = '-';
+            }
+            else if(cell == player){
+                c = 'P';
+            }
+            else if(boxAt[cell]){
+                c = cellTypes[cell] == GOAL ? '*' : 'B';
+            }
+            else if(cellTypes[cell] == GOAL){
+                c = 'G';
+            }
+            frame[at++] = c;
+            frame[at++] = ' ';
+        }
+    }
+
+    /**
+     * Redraws the lines after the map, with the number of moves
+     */
+    private void drawTail(){
+        int width = columns * 2 + 3;
+        int at = border(tailStart, width);
+        movesStart = at;
+        at = write(at, MOVES_LABEL);
+        at = number(at, moves);
+        frame[at++] = '\n';
+        // the last border has no line break
+        length = border(at, width) - 1;
+    }
+
+    /**
+     * Marks the row of the given cell to be redrawn
+     *
+     * @param cell the cell, ignored if negative
+     */
+    private void markRow(int cell){
+        if(cell >= 0){
+            dirtyRows[cell / columns] = true;
+        }
+    }
+
+    /**
+     * Writes a border line followed by a line break
+     *
+     * @return the position after the line break
+     */
+    private int border(int at, int width){
+        frame[at] = '+';
+        Arrays.fill(frame, at + 1, at + width - 1, '-');
+        frame[at + width - 1] = '+';
+        frame[at + width] = '\n';
+        return at + width + 1;
+    }
+
+    /**
+     * Writes the given text
+     *
+     * @return the position after the text
+     */
+    private int write(int at, String text){
+        text.getChars(0, text.length(), frame, at);
+        return at + text.length();
+    }
+
+    /**
+     * Writes the decimal digits of the given number
+     *
+     * @return the position after the digits
+     */
+    private int number(int at, int value){
+        int digits = 1;
+        for(int rest = value / 10; rest != 0; rest /= 10){
+            digits++;
+        }
+        for(int k = digits - 1; k >= 0; k--){
+            frame[at + k] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + digits;
+    }
+}
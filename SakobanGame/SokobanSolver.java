@@ -0,0 +1,558 @@
+/**
+ * This class SokobanSolver finds solutions with the minimum number of pushes
+ * for a SokobanMap. The search is an A* over push states, where every state
+ * keeps the player on the smallest cell it can reach without pushing, states
+ * are hashed with Zobrist keys into a transposition table and the estimate is
+ * the minimum cost matching between boxes and goals using the push distances
+ * of the map, computed once for each expanded state and updated for the one
+ * box moved by each push.
+ * Pushes to dead squares and pushes that freeze a box off a goal are pruned.
+ * A solver is not safe to be used by more than one thread at a time.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class SokobanSolver {
+
+    static final int UNREACHABLE = PushDistanceTable.UNREACHABLE;
+    private static final int[] STEP_ROW = {-1, 1, 0, 0};
+    private static final int[] STEP_COLUMN = {0, 0, -1, 1};
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final SokobanMap map;
+    private final int columns;
+    private final int cells;
+    // neighbour of each cell in each direction, -1 for walls and outside the map
+    private final int[] neighbours;
+    private final boolean[] goal;
+    private final int[] goals;
+    private final PushDistanceTable distances;
+    private final int[] initialPlayer;
+    private final int[][] initialBoxes;
+    private int maxStates = 2000000;
+    private long timeLimit = 0;
+    private int nodesExpanded;
+    private int pushes = -1;
+    private boolean limitReached;
+    // scratch arrays stamped with generation, so they never need to be cleared
+    private final int[] queue;
+    private final int[] seen;
+    private final int[] boxMark;
+    private final int[] parent;
+    private final long[] boxBits;
+    private final long[] frozenBits;
+    private int generation;
+    private int[] found;
+    private final PushDistanceTable.Assignment assignment;
+    // the assignment of the state given to the last findPushes, copied for each of its pushes
+    private final PushDistanceTable.Assignment parentAssignment;
+    private int[] parentBoxes;
+
+    /**
+     * Creates a solver for the given map
+     *
+     * @param map the map to solve
+     * @requires {@code map != null}
+     */
+    public SokobanSolver(SokobanMap map){
+        this.map = map;
+        int rows = map.getRows();
+        columns = map.getColumns();
+        cells = rows * columns;
+        neighbours = new int[cells * 4];
+        for(int i = 0; i < rows; i++){
+            for(int j = 0; j < columns; j++){
+                for(int d = 0; d < 4; d++){
+                    int row = i + STEP_ROW[d];
+                    int column = j + STEP_COLUMN[d];
+                    boolean inside = row >= 0 && row < rows && column >= 0 && column < columns;
+                    neighbours[(i * columns + j) * 4 + d] = inside && map.isOccupiable(row, column)
+                        ? row * columns + column : -1;
+                }
+            }
+        }
+        goal = new boolean[cells];
+        goals = new int[map.getNrBoxes()];
+        for(int k = 0; k < goals.length; k++){
+            goals[k] = map.getGoalRow(k) * columns + map.getGoalColumn(k);
+            goal[goals[k]] = true;
+        }
+        initialPlayer = map.getInitialPlayerPosition();
+        initialBoxes = map.getInitialPositionBoxes();
+        queue = new int[cells];
+        seen = new int[cells];
+        boxMark = new int[cells];
+        parent = new int[cells];
+        boxBits = new long[(cells + 63) >>> 6];
+        frozenBits = new long[boxBits.length];
+        found = new int[goals.length * 12];
+        distances = map.getPushDistances();
+        int[] start = new int[goals.length];
+        for(int k = 0; k < start.length; k++){
+            start[k] = map.getInitialBoxRow(k) * columns + map.getInitialBoxColumn(k);
+        }
+        assignment = distances.assign(start);
+        parentAssignment = distances.assign(start);
+    }
+
+    /**
+     * Sets the maximum number of states kept in the transposition table
+     *
+     * @param maxStates the maximum number of states
+     * @requires {@code maxStates > 0}
+     */
+    public void setMaxStates(int maxStates){
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Sets the maximum time a search may take, 0 means no limit
+     *
+     * @param millis the time limit in milliseconds
+     * @requires {@code millis >= 0}
+     */
+    public void setTimeLimit(long millis){
+        this.timeLimit = millis;
+    }
+
+    /**
+     * Returns the number of states expanded by the last search
+     *
+     * @return the number of expanded states
+     */
+    public int getNodesExpanded(){
+        return nodesExpanded;
+    }
+
+    /**
+     * Returns the number of pushes of the last solution found
+     *
+     * @return the number of pushes, -1 if the last search found no solution
+     */
+    public int getPushes(){
+        return pushes;
+    }
+
+    /**
+     * Indicates if the last search stopped because of the state or time limit
+     *
+     * @return the last search reached a limit
+     */
+    public boolean reachedLimit(){
+        return limitReached;
+    }
+
+    /**
+     * Solves the map from its initial state
+     *
+     * @return the moves of a solution with the minimum number of pushes,
+     *         null if there is none or a limit was reached
+     */
+    public List<Direction> solve(){
+        return solve(initialPlayer, initialBoxes);
+    }
+
+    /**
+     * Solves the map from the given state
+     *
+     * @param playerPos the position of the player
+     * @param boxes the positions of the boxes
+     * @return the moves of a solution with the minimum number of pushes,
+     *         null if there is none or a limit was reached
+     * @requires {@code playerPos.length == 2 && boxes.length == number of goals of the map}
+     */
+    public List<Direction> solve(int[] playerPos, int[][] boxes){
+        return solve(playerPos, boxes, timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000L : Long.MAX_VALUE);
+    }
+
+    /**
+     * Solves the map from the given state before the given instant, checking
+     * the clock before every push
+     *
+     * @param playerPos the position of the player
+     * @param boxes the positions of the boxes
+     * @param deadline the System.nanoTime() at which the search stops,
+     *        Long.MAX_VALUE for no limit
+     * @return the moves of a solution with the minimum number of pushes,
+     *         null if there is none or a limit was reached
+     * @requires {@code playerPos.length == 2 && boxes.length == number of goals of the map}
+     */
+    List<Direction> solve(int[] playerPos, int[][] boxes, long deadline){
+        nodesExpanded = 0;
+        pushes = -1;
+        limitReached = false;
+        Node root = root(playerPos, boxes);
+        if(root == null){
+            return null;
+        }
+        StateTable table = new StateTable(1 << 12);
+        table.putIfBetter(root.hash, 0);
+        PriorityQueue<Node> open = new PriorityQueue<>();
+        open.add(root);
+        while(!open.isEmpty()){
+            Node node = open.poll();
+            if(node.pushes > table.get(node.hash)){
+                continue;
+            }
+            if(isSolved(node)){
+                pushes = node.pushes;
+                return moves(playerPos, node);
+            }
+            nodesExpanded++;
+            int nrPushes = findPushes(node);
+            for(int k = 0; k < nrPushes; k++){
+                // a state with many boxes takes long to expand, so the clock is checked for each push
+                if(deadline != Long.MAX_VALUE && System.nanoTime() > deadline){
+                    limitReached = true;
+                    return null;
+                }
+                Node child = child(node, k);
+                if(child != null && table.putIfBetter(child.hash, child.pushes)){
+                    if(table.size() > maxStates){
+                        limitReached = true;
+                        return null;
+                    }
+                    open.add(child);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the first state of a search
+     *
+     * @param playerPos the position of the player
+     * @param boxes the positions of the boxes
+     * @return the state, null if it can never be solved
+     */
+    Node root(int[] playerPos, int[][] boxes){
+        int player = playerPos[0] * columns + playerPos[1];
+        int[] start = new int[boxes.length];
+        for(int k = 0; k < boxes.length; k++){
+            start[k] = boxes[k][0] * columns + boxes[k][1];
+        }
+        int estimate = estimate(start);
+        if(estimate >= UNREACHABLE){
+            return null;
+        }
+        int normalized = reach(player, start);
+        return new Node(start, normalized, 0, estimate, null, -1, -1, Zobrist.hash(normalized, start));
+    }
+
+    /**
+     * Starts a new generation of the scratch arrays and marks the given boxes
+     *
+     * @param boxes the cells of the boxes
+     */
+    private void markBoxes(int[] boxes){
+        generation++;
+        if(generation == Integer.MAX_VALUE){
+            Arrays.fill(seen, 0);
+            Arrays.fill(boxMark, 0);
+            generation = 1;
+        }
+        for(int k = 0; k < boxes.length; k++){
+            boxMark[boxes[k]] = generation;
+        }
+    }
+
+    /**
+     * Marks in seen every cell the player reaches from start without pushing
+     *
+     * @param start the cell of the player
+     * @param boxes the cells of the boxes
+     * @return the smallest reachable cell, used as the normalized player cell
+     */
+    private int reach(int start, int[] boxes){
+        markBoxes(boxes);
+        int head = 0;
+        int tail = 0;
+        int min = start;
+        queue[tail++] = start;
+        seen[start] = generation;
+        while(head < tail){
+            int cell = queue[head++];
+            if(cell < min){
+                min = cell;
+            }
+            for(int d = 0; d < 4; d++){
+                int to = neighbours[cell * 4 + d];
+                if(to >= 0 && seen[to] != generation && boxMark[to] != generation){
+                    seen[to] = generation;
+                    parent[to] = cell * 4 + d;
+                    queue[tail++] = to;
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Fills found with the box index, target cell and direction of every push
+     * the player can do from the given state
+     *
+     * @param node the state
+     * @return the number of pushes found
+     */
+    int findPushes(Node node){
+        if(parentBoxes != node.boxes){
+            parentAssignment.reset(node.boxes);
+            parentBoxes = node.boxes;
+        }
+        reach(node.player, node.boxes);
+        int count = 0;
+        for(int k = 0; k < node.boxes.length; k++){
+            int box = node.boxes[k];
+            for(int d = 0; d < 4; d++){
+                int behind = neighbours[box * 4 + (d ^ 1)];
+                int target = neighbours[box * 4 + d];
+                if(behind >= 0 && target >= 0 && seen[behind] == generation
+                    && boxMark[target] != generation
+                    && !map.isDeadSquare(target / columns, target % columns)){
+                    if(count * 3 + 3 > found.length){
+                        found = Arrays.copyOf(found, found.length * 2);
+                    }
+                    found[count * 3] = k;
+                    found[count * 3 + 1] = target;
+                    found[count * 3 + 2] = d;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates the state reached by one of the pushes found by the last findPushes
+     *
+     * @param node the state given to findPushes
+     * @param k index of the push
+     * @return the new state, null if it can no longer be solved
+     */
+    Node child(Node node, int k){
+        int index = found[k * 3];
+        int target = found[k * 3 + 1];
+        int direction = found[k * 3 + 2];
+        int from = node.boxes[index];
+        int[] boxes = node.boxes.clone();
+        boxes[index] = target;
+        if(isFrozen(boxes, target)){
+            return null;
+        }
+        if(distances.nearestGoal(target) >= UNREACHABLE){
+            return null;
+        }
+        // only the pushed box moved, so the assignment of the parent needs one augmenting step
+        assignment.copyFrom(parentAssignment);
+        assignment.moveBox(index, target);
+        int estimate = assignment.cost();
+        if(estimate >= UNREACHABLE){
+            return null;
+        }
+        int normalized = reach(from, boxes);
+        long hash = node.hash ^ Zobrist.player(node.player) ^ Zobrist.player(normalized)
+            ^ Zobrist.box(from) ^ Zobrist.box(target);
+        return new Node(boxes, normalized, node.pushes + 1, estimate, node, from, direction, hash);
+    }
+
+    /**
+     * Checks if the pushed box froze the given boxes into a deadlock
+     *
+     * @param boxes the cells of the boxes
+     * @param target the cell of the pushed box
+     * @return the boxes can no longer be solved
+     */
+    private boolean isFrozen(int[] boxes, int target){
+        for(int k = 0; k < boxes.length; k++){
+            boxBits[boxes[k] >>> 6] |= 1L << boxes[k];
+        }
+        boolean frozen = map.isFreezeDeadlock(boxBits, frozenBits, target / columns, target % columns);
+        for(int k = 0; k < boxes.length; k++){
+            boxBits[boxes[k] >>> 6] = 0;
+        }
+        return frozen;
+    }
+
+    /**
+     * Checks if every box of the given state is on a goal
+     *
+     * @param node the state
+     * @return every box is on a goal
+     */
+    boolean isSolved(Node node){
+        int[] boxes = node.boxes;
+        for(int k = 0; k < boxes.length; k++){
+            if(!goal[boxes[k]]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a lower bound of the pushes needed to solve the given boxes, the
+     * cost of the minimum matching between boxes and goals (Hungarian method)
+     *
+     * @param boxes the cells of the boxes
+     * @return the lower bound, at least UNREACHABLE if some box can never reach a goal
+     */
+    private int estimate(int[] boxes){
+        for(int k = 0; k < boxes.length; k++){
+            if(distances.nearestGoal(boxes[k]) >= UNREACHABLE){
+                return UNREACHABLE;
+            }
+        }
+        assignment.reset(boxes);
+        return assignment.cost();
+    }
+
+    /**
+     * Expands the pushes leading to the given state into single moves
+     *
+     * @param playerPos the position of the player at the start of the search
+     * @param last the solved state
+     * @return the moves from the start of the search to the solved state
+     */
+    List<Direction> moves(int[] playerPos, Node last){
+        List<Node> path = new ArrayList<>();
+        for(Node node = last; node.parent != null; node = node.parent){
+            path.add(node);
+        }
+        Collections.reverse(path);
+        List<Direction> result = new ArrayList<>();
+        int player = playerPos[0] * columns + playerPos[1];
+        for(Node node : path){
+            int behind = neighbours[node.from * 4 + (node.direction ^ 1)];
+            walk(player, behind, node.parent.boxes, result);
+            result.add(DIRECTIONS[node.direction]);
+            player = node.from;
+        }
+        return result;
+    }
+
+    /**
+     * Appends the shortest walk between two cells that does not push any box
+     *
+     * @param from the cell of the player
+     * @param to the target cell
+     * @param boxes the cells of the boxes
+     * @param result list the moves are appended to
+     */
+    private void walk(int from, int to, int[] boxes, List<Direction> result){
+        reach(from, boxes);
+        int size = result.size();
+        for(int cell = to; cell != from; cell = parent[cell] / 4){
+            result.add(size, DIRECTIONS[parent[cell] % 4]);
+        }
+    }
+
+    /**
+     * A push state of the search, the boxes are not kept in any order
+     */
+    static final class Node implements Comparable<Node> {
+        final int[] boxes;
+        final int player;
+        final int pushes;
+        final int estimate;
+        final Node parent;
+        final int from;
+        final int direction;
+        final long hash;
+
+        Node(int[] boxes, int player, int pushes, int estimate, Node parent, int from,
+            int direction, long hash){
+            this.boxes = boxes;
+            this.player = player;
+            this.pushes = pushes;
+            this.estimate = estimate;
+            this.parent = parent;
+            this.from = from;
+            this.direction = direction;
+            this.hash = hash;
+        }
+
+        public int compareTo(Node other){
+            int f = pushes + estimate;
+            int otherF = other.pushes + other.estimate;
+            if(f != otherF){
+                return f < otherF ? -1 : 1;
+            }
+            return Integer.compare(other.pushes, pushes);
+        }
+    }
+
+    /**
+     * Open addressing table from state hash to the fewest pushes it was reached with
+     */
+    static final class StateTable {
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        StateTable(int capacity){
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+
+        int size(){
+            return size;
+        }
+
+        int get(long hash){
+            long key = hash == 0 ? 1 : hash;
+            int mask = keys.length - 1;
+            for(int i = (int) (key ^ (key >>> 32)) & mask; keys[i] != 0; i = (i + 1) & mask){
+                if(keys[i] == key){
+                    return values[i];
+                }
+            }
+            return Integer.MAX_VALUE;
+        }
+
+        boolean putIfBetter(long hash, int pushes){
+            long key = hash == 0 ? 1 : hash;
+            int mask = keys.length - 1;
+            int i = (int) (key ^ (key >>> 32)) & mask;
+            for(; keys[i] != 0; i = (i + 1) & mask){
+                if(keys[i] == key){
+                    if(pushes >= values[i]){
+                        return false;
+                    }
+                    values[i] = pushes;
+                    return true;
+                }
+            }
+            keys[i] = key;
+            values[i] = pushes;
+            if(++size * 2 > keys.length){
+                grow();
+            }
+            return true;
+        }
+
+        private void grow(){
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for(int k = 0; k < oldKeys.length; k++){
+                if(oldKeys[k] != 0){
+                    int i = (int) (oldKeys[k] ^ (oldKeys[k] >>> 32)) & mask;
+                    while(keys[i] != 0){
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[k];
+                    values[i] = oldValues[k];
+                }
+            }
+        }
+    }
+}
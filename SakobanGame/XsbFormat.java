@@ -0,0 +1,117 @@
+/**
+ * This class XsbFormat writes levels and matches in the XSB text format used
+ * by level packs: one line per row with '#' for walls, ' ' for floor, '.' for goals,
+ * '$' for boxes, '*' for boxes on goals, '@' for the player and '+' for the
+ * player on a goal. Levels are separated by an empty line and may be preceded
+ * by comment lines starting with ';'.
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+
+public class XsbFormat {
+
+    static final char WALL = '#';
+    static final char FLOOR = ' ';
+    static final char GOAL = '.';
+    static final char BOX = '$';
+    static final char BOX_ON_GOAL = '*';
+    static final char PLAYER = '@';
+    static final char PLAYER_ON_GOAL = '+';
+
+    private XsbFormat(){
+    }
+
+    /**
+     * Writes the initial state of the given map, followed by an empty line
+     *
+     * @param title written as a comment before the level, null for no comment
+     * @param map the map
+     * @param out where the level is written
+     * @throws IOException if out can not be written
+     */
+    public static void write(String title, SokobanMap map, Appendable out) throws IOException{
+        int rows = map.getRows();
+        int columns = map.getColumns();
+        boolean[][] occupiable = new boolean[rows][columns];
+        for(int i = 0; i < rows; i++){
+            for(int j = 0; j < columns; j++){
+                occupiable[i][j] = map.isOccupiable(i, j);
+            }
+        }
+        write(title, occupiable, map.getInitialPositionGoals(), map.getInitialPositionBoxes(),
+            map.getInitialPlayerPosition(), out);
+    }
+
+    /**
+     * Writes the current state of the given match, followed by an empty line
+     *
+     * @param title written as a comment before the level, null for no comment
+     * @param game the match
+     * @param out where the level is written
+     * @throws IOException if out can not be written
+     * @requires {@code game != null}
+     */
+    public static void write(String title, SokobanGame game, Appendable out) throws IOException{
+        int rows = game.getRows();
+        int columns = game.getColumns();
+        boolean[][] occupiable = new boolean[rows][columns];
+        for(int i = 0; i < rows; i++){
+            for(int j = 0; j < columns; j++){
+                occupiable[i][j] = game.isOccupiable(i, j);
+            }
+        }
+        write(title, occupiable, game.getPositionGoals(), game.getPositionBoxes(), game.getPlayerPosition(),
+            out);
+    }
+
+    /**
+     * Writes a level with the given positions, followed by an empty line
+     *
+     * @param title written as a comment before the level, null for no comment
+     * @param occupiable which positions have no walls
+     * @param goals the positions of the goals
+     * @param boxes the positions of the boxes
+     * @param playerPos the position of the player
+     * @param out where the level is written
+     * @throws IOException if out can not be written
+     * @requires {@code the parameters make a valid map}
+     */
+    static void write(String title, boolean[][] occupiable, int[][] goals, int[][] boxes, int[] playerPos,
+        Appendable out) throws IOException{
+        if(title != null){
+            out.append("; ").append(title).append('\n');
+        }
+        int rows = occupiable.length;
+        int columns = occupiable[0].length;
+        char[] cells = new char[rows * columns];
+        for(int i = 0; i < rows; i++){
+            for(int j = 0; j < columns; j++){
+                cells[i * columns + j] = occupiable[i][j] ? FLOOR : WALL;
+            }
+        }
+        for(int k = 0; k < goals.length; k++){
+            cells[goals[k][0] * columns + goals[k][1]] = GOAL;
+        }
+        for(int k = 0; k < boxes.length; k++){
+            int cell = boxes[k][0] * columns + boxes[k][1];
+            cells[cell] = cells[cell] == GOAL ? BOX_ON_GOAL : BOX;
+        }
+        int player = playerPos[0] * columns + playerPos[1];
+        cells[player] = cells[player] == GOAL ? PLAYER_ON_GOAL : PLAYER;
+        for(int i = 0; i < rows; i++){
+            // trailing floor is not written, readers pad short rows, but an
+            // empty line would end the level
+            int end = columns;
+            while(end > 1 && cells[i * columns + end - 1] == FLOOR){
+                end--;
+            }
+            for(int j = 0; j < end; j++){
+                out.append(cells[i * columns + j]);
+            }
+            out.append('\n');
+        }
+        out.append('\n');
+    }
+}
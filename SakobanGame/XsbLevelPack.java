@@ -0,0 +1,312 @@
+/**
+ * This class XsbLevelPack reads level packs in the XSB text format described
+ * in XsbFormat. The file is memory mapped and scanned once to find where each
+ * level starts and ends, and a level is only parsed, straight from the mapped
+ * bytes, when its map is asked for. Floor outside the walls, which the player
+ * can not reach, is read as wall, and short rows are padded with walls.
+ * Usage to check a level pack: java XsbLevelPack file
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class XsbLevelPack {
+
+    private static final byte WALL = 0;
+    private static final byte FLOOR = 1;
+    private static final byte GOAL = 2;
+    private static final byte BOX = 3;
+    private static final byte BOX_ON_GOAL = 4;
+    private static final byte PLAYER = 5;
+    private static final byte PLAYER_ON_GOAL = 6;
+    // cell type of each byte, -1 for bytes that are not part of a map row
+    private static final byte[] TYPES = new byte[256];
+
+    static{
+        Arrays.fill(TYPES, (byte) -1);
+        TYPES[XsbFormat.WALL] = WALL;
+        TYPES[XsbFormat.FLOOR] = FLOOR;
+        // some packs write floor as '-' or '_'
+        TYPES['-'] = FLOOR;
+        TYPES['_'] = FLOOR;
+        TYPES[XsbFormat.GOAL] = GOAL;
+        TYPES[XsbFormat.BOX] = BOX;
+        TYPES[XsbFormat.BOX_ON_GOAL] = BOX_ON_GOAL;
+        TYPES[XsbFormat.PLAYER] = PLAYER;
+        TYPES[XsbFormat.PLAYER_ON_GOAL] = PLAYER_ON_GOAL;
+    }
+
+    private final MappedByteBuffer buffer;
+    private int nrLevels;
+    // first and last byte of the rows of each level, with its size
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int[] rows = new int[64];
+    private int[] columns = new int[64];
+
+    /**
+     * Opens the given level pack and finds its levels
+     *
+     * @param file the level pack
+     * @throws IOException if the file can not be read
+     * @requires {@code the file is smaller than 2 GB}
+     */
+    public XsbLevelPack(Path file) throws IOException{
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        index();
+    }
+
+    public static void main(String[] args) throws IOException{
+        XsbLevelPack pack = new XsbLevelPack(Paths.get(args[0]));
+        int valid = 0;
+        for(int level = 1; level <= pack.size(); level++){
+            MapValidation validation = pack.validate(level);
+            if(validation == MapValidation.VALID){
+                valid++;
+            }
+            else{
+                System.out.println("level " + level + ": " + validation);
+            }
+        }
+        System.out.println(pack.size() + " levels, " + valid + " valid");
+    }
+
+    /**
+     * Returns the number of levels in the pack
+     *
+     * @return the number of levels
+     */
+    public int size(){
+        return nrLevels;
+    }
+
+    /**
+     * Returns a repository of the levels of the pack, which are parsed only
+     * when a match plays them
+     *
+     * @param capacity the maximum number of maps kept
+     * @return the repository
+     * @requires {@code size() >= 1 && capacity >= 1}
+     */
+    public LevelRepository levels(int capacity){
+        return new LevelRepository(nrLevels, this::getMap, capacity);
+    }
+
+    /**
+     * Parses the map of the given level
+     *
+     * @param level the level, numbered from 1
+     * @return the map of the level
+     * @throws IllegalArgumentException if the level is not a valid map
+     * @requires {@code 1 <= level && level <= size()}
+     */
+    public SokobanMap getMap(int level){
+        Level parsed = parse(level);
+        if(parsed.validation != MapValidation.VALID){
+            throw new IllegalArgumentException("level " + level + " is invalid: " + parsed.validation);
+        }
+        return new SokobanMap(parsed.rows, parsed.columns, parsed.occupiable, parsed.goals, parsed.boxes,
+            parsed.player);
+    }
+
+    /**
+     * Parses the given level and checks whether it is a valid map
+     *
+     * @param level the level, numbered from 1
+     * @return VALID or the reason why the level is not a valid map
+     * @requires {@code 1 <= level && level <= size()}
+     */
+    public MapValidation validate(int level){
+        return parse(level).validation;
+    }
+
+    /**
+     * Finds the levels, runs of lines made only of map characters with at
+     * least one wall; any other line, like comments, titles or empty lines,
+     * ends a level
+     */
+    private void index(){
+        int size = buffer.limit();
+        int start = -1;
+        int end = 0;
+        int nrRows = 0;
+        int nrColumns = 0;
+        int at = 0;
+        while(at < size){
+            int lineEnd = at;
+            boolean map = true;
+            boolean wall = false;
+            byte b;
+            while(lineEnd < size && (b = buffer.get(lineEnd)) != '\n'){
+                if(b != '\r'){
+                    map &= TYPES[b & 0xff] >= 0;
+                    wall |= b == XsbFormat.WALL;
+                }
+                lineEnd++;
+            }
+            int width = lineEnd - at;
+            if(width > 0 && buffer.get(lineEnd - 1) == '\r'){
+                width--;
+            }
+            if(map && wall){
+                if(start < 0){
+                    start = at;
+                    nrRows = 0;
+                    nrColumns = 0;
+                }
+                nrRows++;
+                nrColumns = Math.max(nrColumns, width);
+                end = at + width;
+            }
+            else if(start >= 0){
+                add(start, end, nrRows, nrColumns);
+                start = -1;
+            }
+            at = lineEnd + 1;
+        }
+        if(start >= 0){
+            add(start, end, nrRows, nrColumns);
+        }
+    }
+
+    /**
+     * Adds a level to the index
+     */
+    private void add(int start, int end, int nrRows, int nrColumns){
+        if(nrLevels == starts.length){
+            int capacity = nrLevels * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        starts[nrLevels] = start;
+        ends[nrLevels] = end;
+        rows[nrLevels] = nrRows;
+        columns[nrLevels] = nrColumns;
+        nrLevels++;
+    }
+
+    /**
+     * Parses the given level from the mapped file
+     */
+    private Level parse(int level){
+        int nrRows = rows[level - 1];
+        int nrColumns = columns[level - 1];
+        int end = ends[level - 1];
+        byte[] cells = new byte[nrRows * nrColumns];
+        int nrGoals = 0;
+        int nrBoxes = 0;
+        int nrPlayers = 0;
+        int player = -1;
+        int row = 0;
+        int column = 0;
+        for(int at = starts[level - 1]; at < end; at++){
+            byte b = buffer.get(at);
+            if(b == '\n'){
+                row++;
+                column = 0;
+            }
+            else if(b != '\r'){
+                byte type = TYPES[b & 0xff];
+                int cell = row * nrColumns + column++;
+                cells[cell] = type;
+                nrGoals += type == GOAL || type == BOX_ON_GOAL || type == PLAYER_ON_GOAL ? 1 : 0;
+                nrBoxes += type == BOX || type == BOX_ON_GOAL ? 1 : 0;
+                if(type == PLAYER || type == PLAYER_ON_GOAL){
+                    nrPlayers++;
+                    player = cell;
+                }
+            }
+        }
+        Level parsed = new Level(nrRows, nrColumns);
+        if(nrPlayers != 1){
+            parsed.validation = MapValidation.INVALID_PLAYER;
+            return parsed;
+        }
+        reach(cells, player, parsed);
+        parsed.goals = new int[nrGoals][];
+        parsed.boxes = new int[nrBoxes][];
+        int goal = 0;
+        int box = 0;
+        for(int cell = 0; cell < cells.length; cell++){
+            byte type = cells[cell];
+            int[] position = {cell / nrColumns, cell % nrColumns};
+            if(type == GOAL || type == BOX_ON_GOAL || type == PLAYER_ON_GOAL){
+                parsed.goals[goal++] = position;
+            }
+            if(type == BOX || type == BOX_ON_GOAL){
+                parsed.boxes[box++] = position;
+            }
+        }
+        parsed.player = new int[] {player / nrColumns, player % nrColumns};
+        parsed.validation = SokobanMap.validate(nrRows, nrColumns, parsed.occupiable, parsed.goals,
+            parsed.boxes, parsed.player);
+        return parsed;
+    }
+
+    /**
+     * Marks as occupiable the cells without walls the player can reach,
+     * ignoring boxes
+     */
+    private static void reach(byte[] cells, int player, Level parsed){
+        int nrColumns = parsed.columns;
+        int[] queue = new int[cells.length];
+        boolean[] reached = new boolean[cells.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = player;
+        reached[player] = true;
+        while(head < tail){
+            int cell = queue[head++];
+            int row = cell / nrColumns;
+            int column = cell % nrColumns;
+            parsed.occupiable[row][column] = true;
+            tail = visit(cells, reached, queue, tail, row > 0 ? cell - nrColumns : -1);
+            tail = visit(cells, reached, queue, tail, row < parsed.rows - 1 ? cell + nrColumns : -1);
+            tail = visit(cells, reached, queue, tail, column > 0 ? cell - 1 : -1);
+            tail = visit(cells, reached, queue, tail, column < nrColumns - 1 ? cell + 1 : -1);
+        }
+    }
+
+    /**
+     * Adds the given cell to the queue if it has no wall and was not reached
+     *
+     * @return the new end of the queue
+     */
+    private static int visit(byte[] cells, boolean[] reached, int[] queue, int tail, int cell){
+        if(cell >= 0 && cells[cell] != WALL && !reached[cell]){
+            reached[cell] = true;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    /**
+     * The characteristics of a parsed level
+     */
+    private static final class Level {
+        final int rows;
+        final int columns;
+        final boolean[][] occupiable;
+        int[][] goals;
+        int[][] boxes;
+        int[] player;
+        MapValidation validation;
+
+        Level(int rows, int columns){
+            this.rows = rows;
+            this.columns = columns;
+            occupiable = new boolean[rows][columns];
+        }
+    }
+}
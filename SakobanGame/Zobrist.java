@@ -0,0 +1,57 @@
+/**
+ * Pseudo-random 64 bit keys used to hash the states of a Sokoban match, a
+ * state hash is the exclusive or of the keys of every box and of the player
+ *
+ * @author fc58208 Maria Rocha
+ * @author fc57234 Miguel Henriques
+ */
+public final class Zobrist {
+
+    private Zobrist(){
+    }
+
+    /**
+     * Returns the key of a box standing on the given cell
+     *
+     * @param cell index of the cell, row * columns + column
+     * @return the key of a box on the cell
+     * @requires {@code cell >= 0}
+     */
+    public static long box(int cell){
+        return mix(2L * cell + 1);
+    }
+
+    /**
+     * Returns the key of the player standing on the given cell
+     *
+     * @param cell index of the cell, row * columns + column
+     * @return the key of the player on the cell
+     * @requires {@code cell >= 0}
+     */
+    public static long player(int cell){
+        return mix(2L * cell + 2);
+    }
+
+    /**
+     * Returns the hash of the given player and box cells
+     *
+     * @param player cell of the player
+     * @param boxes cells of the boxes
+     * @return the hash of the state
+     */
+    public static long hash(int player, int[] boxes){
+        long hash = player(player);
+        for(int k = 0; k < boxes.length; k++){
+            hash ^= box(boxes[k]);
+        }
+        return hash;
+    }
+
+    // splitmix64 finalizer, the keys are a function of the cell so no table is needed
+    private static long mix(long z){
+        z = z * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}